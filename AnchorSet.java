@@ -0,0 +1,169 @@
+import java.util.Arrays;
+
+// Anchors (publishing devices) addressed by a stable slot index, together with running sums of
+// the weighted linear least-squares normal equations. Each circle (x - xi)^2 + (y - yi)^2 = di^2
+// is linear in (x, y, R = x^2 + y^2):  -2xi*x - 2yi*y + R = di^2 - xi^2 - yi^2,
+// so adding, moving or removing one anchor only adds/subtracts its own terms: O(1) per update.
+// Owned by a single thread.
+public class AnchorSet {
+    // Sums drift through repeated add/subtract; rebuild them exactly every so many updates
+    private static final int REBUILD_INTERVAL = 4096;
+
+    private double[] xs = new double[16];
+    private double[] ys = new double[16];
+    private double[] distances = new double[16];
+    private double[] weights = new double[16];
+    private boolean[] active = new boolean[16];
+    private int highWater;
+    private int size;
+    private int updatesSinceRebuild;
+
+    // Normal equations N * (x, y, R) = v, symmetric: only the upper triangle is kept
+    private double nxx, nxy, nxr, nyy, nyr, nrr;
+    private double vx, vy, vr;
+
+    // Optional index of anchor positions, kept in step with update()/remove()
+    private final SpatialGrid grid;
+
+    public AnchorSet() {
+        this(null);
+    }
+
+    public AnchorSet(SpatialGrid grid) {
+        this.grid = grid;
+    }
+
+    // Log-normal shadowing makes distance error roughly proportional to distance, and the
+    // linearised residual scales with d^2, so its variance grows with d^4
+    public static double weightFor(double distance) {
+        double d = Math.max(distance, 1.0);
+        return 1.0 / (d * d * d * d);
+    }
+
+    public void update(int slot, double x, double y, double distance) {
+        ensureCapacity(slot + 1);
+        if (active[slot]) {
+            accumulate(slot, -1);
+        } else {
+            active[slot] = true;
+            size++;
+            highWater = Math.max(highWater, slot + 1);
+        }
+        xs[slot] = x;
+        ys[slot] = y;
+        distances[slot] = distance;
+        weights[slot] = weightFor(distance);
+        accumulate(slot, 1);
+        if (grid != null) grid.update(slot, x, y);
+        if (++updatesSinceRebuild >= REBUILD_INTERVAL) rebuild();
+    }
+
+    public void remove(int slot) {
+        if (slot >= active.length || !active[slot]) return;
+        accumulate(slot, -1);
+        active[slot] = false;
+        size--;
+        if (grid != null) grid.remove(slot);
+        if (size == 0) clearSums();
+    }
+
+    public void clear() {
+        Arrays.fill(active, 0, highWater, false);
+        if (grid != null) grid.clear();
+        highWater = 0;
+        size = 0;
+        updatesSinceRebuild = 0;
+        clearSums();
+    }
+
+    // Null unless the set was created with a grid
+    public SpatialGrid grid() {
+        return grid;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Slots are in [0, highWater()); check isActive() while iterating
+    public int highWater() {
+        return highWater;
+    }
+
+    public boolean isActive(int slot) {
+        return slot < highWater && active[slot];
+    }
+
+    public double x(int slot) {
+        return xs[slot];
+    }
+
+    public double y(int slot) {
+        return ys[slot];
+    }
+
+    public double distance(int slot) {
+        return distances[slot];
+    }
+
+    public double weight(int slot) {
+        return weights[slot];
+    }
+
+    // Solves the 3x3 normal equations; returns false if the anchor geometry is degenerate
+    // (fewer than three anchors, or all of them close to one line)
+    public boolean solveNormalEquations(double[] out) {
+        if (size < 3) return false;
+        // Cramer's rule on the symmetric system, with a scale-aware singularity test
+        double c00 = nyy * nrr - nyr * nyr;
+        double c01 = nxr * nyr - nxy * nrr;
+        double c02 = nxy * nyr - nxr * nyy;
+        double det = nxx * c00 + nxy * c01 + nxr * c02;
+        double scale = Math.abs(nxx * nyy * nrr);
+        if (!(Math.abs(det) > 1e-9 * scale) || scale == 0) return false;
+        double c11 = nxx * nrr - nxr * nxr;
+        double c12 = nxy * nxr - nxx * nyr;
+        out[0] = (c00 * vx + c01 * vy + c02 * vr) / det;
+        out[1] = (c01 * vx + c11 * vy + c12 * vr) / det;
+        return !Double.isNaN(out[0]) && !Double.isNaN(out[1]);
+    }
+
+    public void rebuild() {
+        clearSums();
+        for (int i = 0; i < highWater; i++) {
+            if (active[i]) accumulate(i, 1);
+        }
+        updatesSinceRebuild = 0;
+    }
+
+    private void accumulate(int slot, int sign) {
+        double ax = -2 * xs[slot];
+        double ay = -2 * ys[slot];
+        double b = distances[slot] * distances[slot] - xs[slot] * xs[slot] - ys[slot] * ys[slot];
+        double w = sign * weights[slot];
+        nxx += w * ax * ax;
+        nxy += w * ax * ay;
+        nxr += w * ax;
+        nyy += w * ay * ay;
+        nyr += w * ay;
+        nrr += w;
+        vx += w * ax * b;
+        vy += w * ay * b;
+        vr += w * b;
+    }
+
+    private void clearSums() {
+        nxx = nxy = nxr = nyy = nyr = nrr = 0;
+        vx = vy = vr = 0;
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= active.length) return;
+        int cap = Math.max(n, active.length * 2);
+        xs = Arrays.copyOf(xs, cap);
+        ys = Arrays.copyOf(ys, cap);
+        distances = Arrays.copyOf(distances, cap);
+        weights = Arrays.copyOf(weights, cap);
+        active = Arrays.copyOf(active, cap);
+    }
+}
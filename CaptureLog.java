@@ -0,0 +1,323 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Append-only capture of raw MQTT traffic, for replaying production load offline (CaptureReplay).
+// A capture is a directory of memory-mapped segment files, each with a small sidecar index:
+//
+//   capture-00000.seg   header: "MQTTCAP1", i64 capture start (epoch millis), i64 first record number
+//                       records from offset 32: i32 length of the rest, i64 receive time (nanos
+//                       since capture start), u16 topic length, topic, payload; i32 0 ends the data
+//   capture-00000.idx   the segment's first record and every INDEX_EVERY-th after it: i64 receive
+//                       time, i64 record number, i32 offset
+//
+// A segment is rolled when the next record does not fit, and truncated to its data on close.
+// All integers are big-endian.
+public final class CaptureLog {
+    static final byte[] MAGIC = "MQTTCAP1".getBytes(StandardCharsets.US_ASCII);
+    static final int HEADER_BYTES = 32;
+    static final int RECORD_OVERHEAD = 4 + 8 + 2;
+    static final int INDEX_EVERY = 4096;
+    static final int INDEX_ENTRY_BYTES = 8 + 8 + 4;
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+
+    private CaptureLog() {}
+
+    static Path segmentPath(Path dir, int segment) {
+        return dir.resolve(String.format("capture-%05d.seg", segment));
+    }
+
+    static Path indexPath(Path dir, int segment) {
+        return dir.resolve(String.format("capture-%05d.idx", segment));
+    }
+
+    // Appends messages as they arrive. Thread-safe; each append is a few copies into the mapped
+    // segment, plus an index write every INDEX_EVERY records.
+    public static final class Writer implements Closeable {
+        private final Path dir;
+        private final long segmentBytes;
+        private final long startNanos = System.nanoTime();
+        private final long startMillis = System.currentTimeMillis();
+        private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+
+        private int segment = -1;
+        private FileChannel channel;
+        private FileChannel index;
+        private MappedByteBuffer data;
+        private long records;
+        private long segmentRecords;
+        private long bytes;
+        private long skipped;
+        // Topics rarely change between messages; keep the last one's bytes
+        private String lastTopic;
+        private byte[] lastTopicBytes;
+
+        // dir must not hold a capture yet: times and record numbers restart with every writer
+        public Writer(Path dir, long segmentBytes) throws IOException {
+            this.dir = dir;
+            this.segmentBytes = Math.max(segmentBytes, 4096);
+            Files.createDirectories(dir);
+            if (Files.exists(segmentPath(dir, 0))) throw new IOException(dir + " already holds a capture");
+            roll();
+        }
+
+        // Captures into CAPTURE_DIR in CAPTURE_SEGMENT_MB segments (default 64); null if unset
+        public static Writer fromSettings() throws IOException {
+            String dir = Settings.getString("CAPTURE_DIR", null);
+            if (dir == null) return null;
+            return new Writer(Path.of(dir), Settings.getLong("CAPTURE_SEGMENT_MB", DEFAULT_SEGMENT_BYTES >> 20) << 20);
+        }
+
+        public void append(String topic, byte[] payload, long receivedAtNanos) throws IOException {
+            append(topic, payload, 0, payload.length, receivedAtNanos);
+        }
+
+        public synchronized void append(String topic, byte[] buf, int off, int len, long receivedAtNanos) throws IOException {
+            if (data == null) return;
+            if (!topic.equals(lastTopic)) {
+                lastTopic = topic;
+                lastTopicBytes = topic.getBytes(StandardCharsets.UTF_8);
+            }
+            int size = RECORD_OVERHEAD + lastTopicBytes.length + len;
+            // Room for the record and the end marker after it
+            if (size + 4 > segmentBytes - HEADER_BYTES) {
+                skipped++;
+                return;
+            }
+            if (data.remaining() < size + 4) roll();
+            int offset = data.position();
+            long time = receivedAtNanos - startNanos;
+            if (segmentRecords++ % INDEX_EVERY == 0) writeIndex(time, offset);
+            data.putInt(size - 4);
+            data.putLong(time);
+            data.putShort((short) lastTopicBytes.length);
+            data.put(lastTopicBytes);
+            data.put(buf, off, len);
+            records++;
+            bytes += size;
+        }
+
+        public synchronized long records() {
+            return records;
+        }
+
+        public synchronized long bytes() {
+            return bytes;
+        }
+
+        // Messages too large for a segment
+        public synchronized long skipped() {
+            return skipped;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            finishSegment();
+            data = null;
+        }
+
+        private void writeIndex(long time, int offset) throws IOException {
+            indexEntry.clear();
+            indexEntry.putLong(time).putLong(records).putInt(offset).flip();
+            while (indexEntry.hasRemaining()) index.write(indexEntry);
+        }
+
+        private void roll() throws IOException {
+            finishSegment();
+            segment++;
+            channel = FileChannel.open(segmentPath(dir, segment),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index = FileChannel.open(indexPath(dir, segment),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            data = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            data.put(MAGIC);
+            data.putLong(startMillis);
+            data.putLong(records);
+            data.position(HEADER_BYTES);
+            segmentRecords = 0;
+        }
+
+        // Writes the end marker, flushes and trims the segment to the data actually written
+        private void finishSegment() throws IOException {
+            if (data == null) return;
+            int end = data.position();
+            data.putInt(0);
+            data.force();
+            data = null;
+            channel.truncate(end + 4);
+            channel.close();
+            index.close();
+        }
+    }
+
+    // Reads a capture back in order, across segments. The payload is exposed as a reused
+    // buffer (payload(), payloadLength()), so replaying allocates nothing per message. Not
+    // thread-safe.
+    public static final class Reader implements Closeable {
+        private final Path dir;
+        private final List<Path> segments;
+        private int segment = -1;
+        private FileChannel channel;
+        private MappedByteBuffer data;
+
+        private long startMillis;
+        private long time;
+        private long record;
+        // The current message was found by seek() and is returned by the next call to next()
+        private boolean held;
+        private String topic;
+        private byte[] topicBytes = new byte[64];
+        private byte[] topicScratch = new byte[64];
+        private int topicLength = -1;
+        private byte[] payload = new byte[256];
+        private int payloadLength;
+
+        public Reader(Path dir) throws IOException {
+            this.dir = dir;
+            try (Stream<Path> files = Files.list(dir)) {
+                segments = new ArrayList<>(files.filter(p -> p.getFileName().toString().endsWith(".seg")).sorted().toList());
+            }
+            if (segments.isEmpty()) throw new IOException("No capture segments in " + dir);
+            if (!openSegment(0)) throw new IOException(segments.get(0) + " is not a capture segment");
+        }
+
+        // Positions the reader so that next() returns the first message received at least
+        // offsetNanos after the capture start: jumps to the last index entry at or before it,
+        // then scans; returns false if there is no such message
+        public boolean seek(long offsetNanos) throws IOException {
+            int bestSegment = 0, bestOffset = HEADER_BYTES;
+            long bestRecord = -1;
+            for (int s = 0; s < segments.size(); s++) {
+                Path idx = indexPath(dir, segmentNumber(segments.get(s)));
+                if (!Files.exists(idx)) continue;
+                ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(idx));
+                while (entries.remaining() >= INDEX_ENTRY_BYTES) {
+                    long t = entries.getLong();
+                    long r = entries.getLong();
+                    int o = entries.getInt();
+                    if (t > offsetNanos) break;
+                    bestSegment = s;
+                    bestOffset = o;
+                    bestRecord = r;
+                }
+            }
+            held = false;
+            segment = -1;
+            if (!openSegment(bestSegment)) return false;
+            data.position(bestOffset);
+            if (bestRecord >= 0) record = bestRecord - 1;
+            while (next()) {
+                if (time >= offsetNanos) {
+                    held = true;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Advances to the next message; false at the end of the capture
+        public boolean next() throws IOException {
+            if (held) {
+                held = false;
+                return true;
+            }
+            while (true) {
+                if (data.remaining() >= 4) {
+                    int length = data.getInt();
+                    // A record too short for its own header or topic is torn, like a short
+                    // tail: the rest of the segment is skipped
+                    int tl = length >= 10 && length <= data.remaining() ? data.getShort(data.position() + 8) & 0xFFFF : -1;
+                    if (tl >= 0 && tl <= length - 10) {
+                        time = data.getLong();
+                        data.getShort();
+                        readTopic(tl);
+                        payloadLength = length - 8 - 2 - tl;
+                        if (payload.length < payloadLength) payload = new byte[Math.max(payloadLength, payload.length * 2)];
+                        data.get(payload, 0, payloadLength);
+                        record++;
+                        return true;
+                    }
+                }
+                if (segment + 1 >= segments.size() || !openSegment(segment + 1)) return false;
+            }
+        }
+
+        // Capture start on the gateway clock, and this message's receive time relative to it
+        public long startMillis() {
+            return startMillis;
+        }
+
+        public long timeNanos() {
+            return time;
+        }
+
+        // Position of the message in the whole capture, from 0
+        public long recordNumber() {
+            return record;
+        }
+
+        public String topic() {
+            return topic;
+        }
+
+        public byte[] payload() {
+            return payload;
+        }
+
+        public int payloadLength() {
+            return payloadLength;
+        }
+
+        public int segmentCount() {
+            return segments.size();
+        }
+
+        @Override
+        public void close() throws IOException {
+            data = null;
+            if (channel != null) channel.close();
+        }
+
+        // The String is only rebuilt when the topic differs from the previous message's
+        private void readTopic(int length) {
+            if (topicScratch.length < length) topicScratch = new byte[Math.max(length, topicScratch.length * 2)];
+            data.get(topicScratch, 0, length);
+            if (length == topicLength && Arrays.equals(topicScratch, 0, length, topicBytes, 0, length)) return;
+            byte[] swap = topicBytes;
+            topicBytes = topicScratch;
+            topicScratch = swap;
+            topicLength = length;
+            topic = new String(topicBytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private boolean openSegment(int s) throws IOException {
+            close();
+            segment = s;
+            channel = FileChannel.open(segments.get(s), StandardOpenOption.READ);
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.remaining() < HEADER_BYTES) return false;
+            byte[] magic = new byte[MAGIC.length];
+            data.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) return false;
+            startMillis = data.getLong();
+            record = data.getLong() - 1;
+            data.position(HEADER_BYTES);
+            return true;
+        }
+
+        private static int segmentNumber(Path segment) {
+            String name = segment.getFileName().toString();
+            return Integer.parseInt(name.substring("capture-".length(), name.length() - ".seg".length()));
+        }
+    }
+}
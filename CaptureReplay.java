@@ -0,0 +1,167 @@
+import org.eclipse.paho.client.mqttv3.*;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Replays a capture written by the gateway (HeadlessGateway --capture, or CAPTURE_DIR for the
+// window) and reports the processed message rate; the standard offline throughput regression:
+//
+//   java -cp .:lib/paho-mqtt-client.jar CaptureReplay --dir=capture --speed=max
+//
+// Options (each also readable from REPLAY_<NAME>):
+//   --dir          capture directory
+//   --speed        1 (as captured), N (N times faster) or max (no pacing, the default)
+//   --target       engine: submit straight into an in-process GatewayEngine (default)
+//                  broker: re-publish over MQTT; without --broker an in-process LocalBroker and
+//                  GatewayEngine are started, so the whole MQTT path is measured
+//   --broker, --qos (broker target), --shards, --from (seconds into the capture), --loops
+//   --min-rate     exit with status 1 if fewer messages per second were processed
+//
+// With --speed=max, INGEST_BACKPRESSURE=block keeps the engine from shedding readings, so the
+// rate measures processing rather than how much was dropped.
+//
+// Payloads are replayed byte for byte, publish timestamps included, so only the latencies timed
+// on the gateway clock (receive->decode, decode->position) mean anything; publish->receive would
+// measure how old the capture is, and is left out of the report.
+public class CaptureReplay {
+    private static final long SETTLE_NANOS = 500_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = Settings.parseArgs(args);
+        String dir = option(options, "dir", "capture");
+        String speedOption = option(options, "speed", "max");
+        double speed = speedOption.equalsIgnoreCase("max") ? 0 : Double.parseDouble(speedOption);
+        boolean viaBroker = option(options, "target", "engine").equalsIgnoreCase("broker");
+        String brokerUrl = option(options, "broker", null);
+        int qos = Integer.parseInt(option(options, "qos", "0"));
+        long fromNanos = (long) (Double.parseDouble(option(options, "from", "0")) * 1e9);
+        int loops = Math.max(1, Integer.parseInt(option(options, "loops", "1")));
+        double minRate = Double.parseDouble(option(options, "min-rate", "0"));
+
+        // An external broker means an external gateway; otherwise measure one in this JVM
+        GatewayEngine engine = null;
+        LocalBroker broker = null;
+        if (!viaBroker || brokerUrl == null) {
+            engine = GatewayEngine.fromSettings(
+                Integer.parseInt(option(options, "shards", Integer.toString(GatewayEngine.DEFAULT_SHARDS))));
+            engine.setEventListener(s -> {});
+            engine.start();
+        }
+        MqttAsyncClient publisher = null;
+        Semaphore window = null;
+        if (viaBroker) {
+            if (brokerUrl == null) {
+                broker = new LocalBroker(0);
+                brokerUrl = broker.url();
+                engine.connect(brokerUrl, "CaptureReplay-gateway", "#");
+            }
+            MqttConnectOptions connect = new MqttConnectOptions();
+            connect.setCleanSession(true);
+            connect.setMaxInflight(1000);
+            publisher = new MqttAsyncClient(brokerUrl, "CaptureReplay-" + ProcessHandle.current().pid(), new MemoryPersistence());
+            publisher.connect(connect).waitForCompletion();
+            window = new Semaphore(1000);
+        }
+
+        System.out.printf("Replaying %s %s at %s into %s%n", dir, loops > 1 ? loops + " times" : "once",
+                speed > 0 ? speed + "x" : "max speed", viaBroker ? brokerUrl : "the engine");
+        long messages = 0, bytes = 0;
+        long start = System.nanoTime();
+        for (int loop = 0; loop < loops; loop++) {
+            try (CaptureLog.Reader reader = new CaptureLog.Reader(Path.of(dir))) {
+                if (fromNanos > 0 && !reader.seek(fromNanos)) {
+                    System.out.println("Capture ends before --from");
+                    break;
+                }
+                long firstTime = -1, wallStart = System.nanoTime();
+                while (reader.next()) {
+                    if (firstTime < 0) firstTime = reader.timeNanos();
+                    if (speed > 0) pace(wallStart + (long) ((reader.timeNanos() - firstTime) / speed));
+                    if (publisher != null) {
+                        window.acquire();
+                        final Semaphore w = window;
+                        publisher.publish(reader.topic(), Arrays.copyOf(reader.payload(), reader.payloadLength()), qos, false,
+                                null, new IMqttActionListener() {
+                                    @Override
+                                    public void onSuccess(IMqttToken token) {
+                                        w.release();
+                                    }
+
+                                    @Override
+                                    public void onFailure(IMqttToken token, Throwable ex) {
+                                        w.release();
+                                    }
+                                });
+                    } else {
+                        engine.submit(reader.topic(), reader.payload(), 0, reader.payloadLength());
+                    }
+                    messages++;
+                    bytes += reader.payloadLength();
+                }
+            }
+        }
+        double fed = (System.nanoTime() - start) / 1e9;
+        if (window != null) window.tryAcquire(1000, 10, TimeUnit.SECONDS);
+        long done = engine != null ? settle(engine) : System.nanoTime();
+        double elapsed = (done - start) / 1e9;
+
+        double rate = messages / elapsed;
+        System.out.printf("Replayed %d messages (%.1f MB) in %.2fs: fed at %.0f msg/s, processed %.0f msg/s%n",
+                messages, bytes / 1e6, elapsed, messages / fed, rate);
+        if (engine != null) {
+            System.out.printf("Readings %d (%.0f/s) | tags %d | dropped %d | malformed %d%n",
+                    engine.metrics().getReceived(), engine.metrics().getReceived() / elapsed,
+                    engine.tags().size(), engine.dropped(), engine.decodeErrors());
+            // Not publish->receive: it counts the capture's age
+            System.out.println("receive->decode   " + engine.metrics().receiveToDecode().summary());
+            System.out.println("decode->position  " + engine.metrics().decodeToPosition().summary());
+            engine.stop();
+        }
+        if (publisher != null) {
+            publisher.disconnect().waitForCompletion(5000);
+            publisher.close();
+        }
+        if (broker != null) broker.close();
+        if (minRate > 0 && rate < minRate) {
+            System.out.printf("FAILED: %.0f msg/s is below --min-rate %.0f%n", rate, minRate);
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    private static void pace(long targetNanos) {
+        long wait;
+        while ((wait = targetNanos - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+    }
+
+    // Waits until nothing new has arrived for a moment; returns when the shard queues last
+    // became empty, i.e. when the engine finished the replayed traffic
+    private static long settle(GatewayEngine engine) {
+        long lastCount = -1, lastChange = System.nanoTime(), drainedAt = 0;
+        while (true) {
+            long count = engine.metrics().getReceived();
+            long now = System.nanoTime();
+            if (count != lastCount) {
+                lastCount = count;
+                lastChange = now;
+                drainedAt = 0;
+            }
+            if (engine.queueDepth() > 0) {
+                drainedAt = 0;
+            } else if (drainedAt == 0) {
+                drainedAt = now;
+            }
+            if (drainedAt != 0 && now - lastChange > SETTLE_NANOS) return drainedAt;
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    private static String option(Map<String, String> options, String name, String def) {
+        return Settings.option(options, "REPLAY_", name, def);
+    }
+}
@@ -0,0 +1,183 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+// Per-device state keyed by a dense integer index, with a small ring of recent readings per device
+// kept in flat primitive columns (index * historySize + k), so recording a reading allocates
+// nothing. Devices not heard from for ttlMillis are evicted by sweepIfDue(), which the owning
+// thread calls from its loop; freed indexes are reused, so memory follows the live device count
+// rather than every id ever seen. Owned by a single thread, apart from size().
+public class DeviceStore {
+    private final int historySize;
+    private final long ttlNanos;
+    private final long sweepIntervalNanos;
+    private long nextSweepNanos;
+
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private int[] freeIndexes = new int[16];
+    private int freeCount;
+    private int highWater;
+    private volatile int size;
+
+    private String[] ids = new String[16];
+    private long[] lastSeenNanos = new long[16];
+    // Ring per device: head is the next write position, count the number of valid entries
+    private int[] heads = new int[16];
+    private int[] counts = new int[16];
+    private double[] xs, ys, distances;
+    private long[] times;
+
+    // ttlMillis <= 0 keeps devices forever
+    public DeviceStore(int historySize, long ttlMillis) {
+        this.historySize = Math.max(1, historySize);
+        this.ttlNanos = ttlMillis > 0 ? ttlMillis * 1_000_000 : 0;
+        // Sweep a few times per TTL so a device outlives it by at most a quarter
+        this.sweepIntervalNanos = Math.max(ttlNanos / 4, 10_000_000);
+        xs = new double[16 * this.historySize];
+        ys = new double[16 * this.historySize];
+        distances = new double[16 * this.historySize];
+        times = new long[16 * this.historySize];
+    }
+
+    // Sized from DEVICE_HISTORY readings per device and DEVICE_TTL_MS (default 30 s, 0 disables)
+    public static DeviceStore fromSettings() {
+        return new DeviceStore(Settings.getInt("DEVICE_HISTORY", 8), Settings.getLong("DEVICE_TTL_MS", 30_000));
+    }
+
+    public int historySize() {
+        return historySize;
+    }
+
+    // Index for the device, added if unknown; marks it as seen
+    public int index(String deviceId, long nowNanos) {
+        Integer idx = indexes.get(deviceId);
+        int i;
+        if (idx != null) {
+            i = idx;
+        } else {
+            i = freeCount > 0 ? freeIndexes[--freeCount] : highWater++;
+            ensureCapacity(i + 1);
+            ids[i] = deviceId;
+            heads[i] = 0;
+            counts[i] = 0;
+            indexes.put(deviceId, i);
+            size++;
+        }
+        lastSeenNanos[i] = nowNanos;
+        return i;
+    }
+
+    // -1 if the device is unknown or was evicted
+    public int find(String deviceId) {
+        Integer idx = indexes.get(deviceId);
+        return idx == null ? -1 : idx;
+    }
+
+    // Stores a reading without marking the device as seen; only index() does that, so derived
+    // values recorded for a device (a tag's fix) never keep it alive
+    public void record(int index, double x, double y, double distance, long nowNanos) {
+        int at = index * historySize + heads[index];
+        xs[at] = x;
+        ys[at] = y;
+        distances[at] = distance;
+        times[at] = nowNanos;
+        heads[index] = heads[index] + 1 == historySize ? 0 : heads[index] + 1;
+        if (counts[index] < historySize) counts[index]++;
+    }
+
+    // Readings currently held for the device, at most historySize()
+    public int historyCount(int index) {
+        return counts[index];
+    }
+
+    // k = 0 is the latest reading, k = historyCount() - 1 the oldest still held
+    public double x(int index, int k) {
+        return xs[slot(index, k)];
+    }
+
+    public double y(int index, int k) {
+        return ys[slot(index, k)];
+    }
+
+    public double distance(int index, int k) {
+        return distances[slot(index, k)];
+    }
+
+    public long time(int index, int k) {
+        return times[slot(index, k)];
+    }
+
+    // Mean distance over the latest window readings; from four readings on, the smallest and
+    // largest are dropped first, since RSSI noise shows up as occasional outliers
+    public double filteredDistance(int index, int window) {
+        int n = Math.min(Math.max(window, 1), counts[index]);
+        if (n == 0) return Double.NaN;
+        double sum = 0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < n; k++) {
+            double d = distances[slot(index, k)];
+            sum += d;
+            min = Math.min(min, d);
+            max = Math.max(max, d);
+        }
+        if (n >= 4) return (sum - min - max) / (n - 2);
+        return sum / n;
+    }
+
+    public String id(int index) {
+        return ids[index];
+    }
+
+    public long lastSeenNanos(int index) {
+        return lastSeenNanos[index];
+    }
+
+    // Live devices; safe to read from any thread
+    public int size() {
+        return size;
+    }
+
+    // Indexes are in [0, highWater()); evicted ones have a null id()
+    public int highWater() {
+        return highWater;
+    }
+
+    // Evicts devices idle for longer than the TTL, at most once per sweep interval. evicted is
+    // called with each index before it is freed, while id(index) is still valid.
+    public int sweepIfDue(long nowNanos, IntConsumer evicted) {
+        if (ttlNanos == 0 || nowNanos - nextSweepNanos < 0) return 0;
+        nextSweepNanos = nowNanos + sweepIntervalNanos;
+        int removed = 0;
+        for (int i = 0; i < highWater; i++) {
+            if (ids[i] != null && nowNanos - lastSeenNanos[i] > ttlNanos) {
+                if (evicted != null) evicted.accept(i);
+                indexes.remove(ids[i]);
+                ids[i] = null;
+                if (freeCount == freeIndexes.length) freeIndexes = Arrays.copyOf(freeIndexes, freeCount * 2);
+                freeIndexes[freeCount++] = i;
+                size--;
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private int slot(int index, int k) {
+        int i = heads[index] - 1 - k;
+        if (i < 0) i += historySize;
+        return index * historySize + i;
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= ids.length) return;
+        int cap = Math.max(n, ids.length * 2);
+        ids = Arrays.copyOf(ids, cap);
+        lastSeenNanos = Arrays.copyOf(lastSeenNanos, cap);
+        heads = Arrays.copyOf(heads, cap);
+        counts = Arrays.copyOf(counts, cap);
+        xs = Arrays.copyOf(xs, cap * historySize);
+        ys = Arrays.copyOf(ys, cap * historySize);
+        distances = Arrays.copyOf(distances, cap * historySize);
+        times = Arrays.copyOf(times, cap * historySize);
+    }
+}
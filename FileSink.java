@@ -0,0 +1,86 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Appends position estimates, tag positions as they are recomputed, and optionally every reading
+// to a CSV file:
+//   position,<epoch millis>,<x>,<y>,<anchors>
+//   tag,<epoch millis>,<tagId>,<x>,<y>,<anchors>
+//   reading,<epoch millis>,<deviceId>,<x>,<y>,<rssi>,<distance>[,<tagId>]
+// Writes go through a large buffer that is flushed at most once a second.
+public class FileSink implements GatewaySink {
+    private static final long FLUSH_INTERVAL_MS = 1000;
+
+    private final BufferedWriter out;
+    private final boolean includeReadings;
+    private final StringBuilder line = new StringBuilder(128);
+    // Tag rows are written from the tag tick thread
+    private final StringBuilder tagLines = new StringBuilder(8192);
+    private long lastFlush = System.currentTimeMillis();
+    private boolean failed;
+
+    public FileSink(Path path, boolean includeReadings) throws IOException {
+        out = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this.includeReadings = includeReadings;
+    }
+
+    @Override
+    public void onReading(Reading r) {
+        if (!includeReadings) return;
+        line.setLength(0);
+        line.append("reading,").append(System.currentTimeMillis()).append(',').append(r.deviceId)
+            .append(',').append(r.x).append(',').append(r.y).append(',').append(r.rssi)
+            .append(',').append(r.distance);
+        if (r.tagId != null) line.append(',').append(r.tagId);
+        line.append('\n');
+        write(line);
+    }
+
+    @Override
+    public void onSnapshot(PositionSnapshot snapshot) {
+        if (!snapshot.hasEstimate()) return;
+        line.setLength(0);
+        line.append("position,").append(System.currentTimeMillis()).append(',').append(snapshot.estimateX)
+            .append(',').append(snapshot.estimateY).append(',').append(snapshot.size()).append('\n');
+        write(line);
+    }
+
+    @Override
+    public void onTags(TagSnapshot tags) {
+        long now = System.currentTimeMillis();
+        tagLines.setLength(0);
+        for (int i = 0; i < tags.size(); i++) {
+            if (!tags.updated[i]) continue;
+            tagLines.append("tag,").append(now).append(',').append(tags.tagIds[i]).append(',').append(tags.xs[i])
+                .append(',').append(tags.ys[i]).append(',').append(tags.anchors[i]).append('\n');
+        }
+        write(tagLines);
+    }
+
+    @Override
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException ignored) {}
+    }
+
+    private synchronized void write(StringBuilder text) {
+        if (failed) return;
+        try {
+            out.append(text);
+            long now = System.currentTimeMillis();
+            if (now - lastFlush >= FLUSH_INTERVAL_MS) {
+                out.flush();
+                lastFlush = now;
+            }
+        } catch (IOException ex) {
+            // Keep the gateway running; report once and stop writing
+            failed = true;
+            System.err.println("FileSink disabled: " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,579 @@
+import org.eclipse.paho.client.mqttv3.*;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Headless gateway: MQTT ingest, decoding, per-device processing and position estimation,
+// with no Swing dependency. SwingSubscriber and HeadlessGateway both just observe it.
+//
+//   MQTT callback --decode, route by deviceId hash--> shard queues (one thread each)
+//       --> aggregator queue --> aggregator thread: anchors, solver, snapshots, sinks
+//
+// A device always lands on the same shard and every shard feeds the aggregator in FIFO order,
+// so per-device ordering is preserved end to end while per-device work spreads over cores.
+//
+// Readings that name a tag (multi-tag deployments) are not anchors of the gateway's own
+// receiver: the shard hands them to the TagEngine, which a tick thread (started by the first tag
+// reading) solves in parallel every TAG_TICK_MS into a TagSnapshot. They still pass through the
+// aggregator for the sinks.
+public class GatewayEngine {
+    // Convert RSSI to distance (simple model: d = 10^((A - RSSI)/(10*n)))
+    private static final double RSSI_AT_1M = -40;
+    private static final double PATH_LOSS_EXPONENT = 2.0;
+
+    private static final int MAX_NOTICES = 256;
+    private static final int MAX_BATCH = 1024;
+    public static final int DEFAULT_SHARDS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+
+    // Per-device counters owned by one shard thread, next to its DeviceStore entry; also read
+    // (racily) by GatewayMetrics for reports
+    static class DeviceState {
+        final String deviceId;
+        long messages, gaps, lastSequence;
+        long lastArrivalNanos;
+        // Messages per second over the last completed window
+        long windowStartNanos, windowCount;
+        double windowRate;
+
+        DeviceState(String deviceId) {
+            this.deviceId = deviceId;
+        }
+
+        // A device that went quiet reports 0 rather than its last window
+        double rate(long nowNanos) {
+            return nowNanos - lastArrivalNanos > 2 * RATE_WINDOW_NANOS ? 0 : windowRate;
+        }
+    }
+
+    private final class Shard implements Runnable {
+        final ReadingQueue queue;
+        final DeviceStore store;
+        // Counters by store index; replaced (never resized in place) when it grows, so a reader
+        // on another thread always iterates a complete array
+        volatile DeviceState[] states = new DeviceState[16];
+        final Reading current = new Reading();
+
+        Shard(int capacity, ReadingQueue.Backpressure policy, int sampleEvery, int history, long ttlMillis) {
+            queue = new ReadingQueue(capacity, policy, sampleEvery);
+            store = new DeviceStore(history, ttlMillis);
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (running) {
+                int n = 0;
+                while (n < MAX_BATCH && queue.poll(current)) {
+                    process(current);
+                    aggregatorQueue.offer(current);
+                    n++;
+                }
+                store.sweepIfDue(System.nanoTime(), this::evicted);
+                idle = n > 0 ? 0 : idle(idle);
+            }
+        }
+
+        private void process(Reading r) {
+            long now = r.receivedAtNanos != 0 ? r.receivedAtNanos : System.nanoTime();
+            int idx = store.index(r.deviceId, now);
+            DeviceState state = stateFor(idx, r.deviceId);
+            double distance = Math.pow(10, (RSSI_AT_1M - r.rssi) / (10 * PATH_LOSS_EXPONENT));
+            store.record(idx, r.x, r.y, distance, now);
+            count(state, r, now);
+            if (r.tagId != null) {
+                // The device's history mixes every tag it hears, so it cannot filter this one
+                r.distance = distance;
+                tags.record(r, now);
+                if (!tagsStarted.get()) startTags();
+            } else {
+                r.distance = store.filteredDistance(idx, distanceWindow);
+            }
+        }
+
+        private DeviceState stateFor(int idx, String deviceId) {
+            DeviceState[] current = states;
+            if (idx >= current.length) {
+                current = Arrays.copyOf(current, Math.max(idx + 1, current.length * 2));
+                states = current;
+            }
+            DeviceState state = current[idx];
+            // A reused index still holds the evicted device's counters until first use
+            if (state == null || !state.deviceId.equals(deviceId)) {
+                state = new DeviceState(deviceId);
+                current[idx] = state;
+            }
+            return state;
+        }
+
+        private void evicted(int idx) {
+            DeviceState[] current = states;
+            if (idx < current.length) current[idx] = null;
+            metrics.evictedDevices.increment();
+        }
+
+        // Gaps count readings lost anywhere before this point, including those shed by the
+        // shard queue's backpressure policy (see dropped()). A sequence that goes backwards
+        // means the publisher restarted and just resets the baseline.
+        private void count(DeviceState state, Reading r, long now) {
+            state.messages++;
+            if (r.sequence > 0) {
+                if (state.lastSequence > 0 && r.sequence > state.lastSequence + 1) {
+                    long lost = r.sequence - state.lastSequence - 1;
+                    state.gaps += lost;
+                    metrics.sequenceGaps.add(lost);
+                }
+                state.lastSequence = r.sequence;
+            }
+            if (state.windowCount == 0 && state.windowStartNanos == 0) state.windowStartNanos = now;
+            state.windowCount++;
+            if (now - state.windowStartNanos >= RATE_WINDOW_NANOS) {
+                state.windowRate = state.windowCount * 1e9 / (now - state.windowStartNanos);
+                state.windowStartNanos = now;
+                state.windowCount = 0;
+            }
+            state.lastArrivalNanos = now;
+        }
+    }
+
+    private final Shard[] shards;
+    private final ReadingQueue aggregatorQueue;
+    private final List<GatewaySink> sinks = new CopyOnWriteArrayList<>();
+    private final LongAdder decodeErrors = new LongAdder();
+    private final LongAdder envelopes = new LongAdder();
+    private final LongAdder batchedReadings = new LongAdder();
+    private final GatewayMetrics metrics = new GatewayMetrics(this);
+    private final ConcurrentLinkedQueue<String> notices = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger noticeCount = new AtomicInteger();
+    private final ThreadLocal<ReadingDecoder> decoders = ThreadLocal.withInitial(ReadingDecoder::new);
+    private final ThreadLocal<Reading> scratch = ThreadLocal.withInitial(Reading::new);
+
+    // Owned by the aggregator thread. Store indexes double as AnchorSet slots, so an evicted
+    // device's slot is reused by the next new one.
+    private final DeviceStore anchorStore;
+    private String[] anchorLabels = new String[16];
+    private final AnchorSet anchors = new AnchorSet(SpatialGrid.fromSettings());
+    private final int distanceWindow;
+    private final PositionSolver solver;
+    private final double[] estimate = new double[2];
+    private final Reading aggregated = new Reading();
+    private final long[] batchDecodedAt = new long[MAX_BATCH];
+    private long version;
+
+    private final TagEngine tags;
+    private volatile TagSnapshot tagSnapshot = TagSnapshot.EMPTY;
+
+    private volatile PositionSnapshot snapshot = PositionSnapshot.EMPTY;
+    private volatile Consumer<String> events = System.out::println;
+    private volatile CaptureLog.Writer capture;
+    private volatile boolean running;
+    // Shard threads add the tag thread on the first tag reading while stop() may be iterating
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean tagsStarted = new AtomicBoolean();
+    private MqttClient client;
+
+    public GatewayEngine(int shardCount, int queueCapacity, ReadingQueue.Backpressure policy, int sampleEvery, PositionSolver solver) {
+        this(shardCount, queueCapacity, policy, sampleEvery, solver, 8, 30_000, 1);
+    }
+
+    // deviceHistory readings are kept per device, devices silent for deviceTtlMillis are dropped
+    // (0 keeps them), and a device's distance is filtered over its latest distanceWindow readings
+    public GatewayEngine(int shardCount, int queueCapacity, ReadingQueue.Backpressure policy, int sampleEvery, PositionSolver solver,
+                         int deviceHistory, long deviceTtlMillis, int distanceWindow) {
+        this(shardCount, queueCapacity, policy, sampleEvery, solver, deviceHistory, deviceTtlMillis, distanceWindow,
+            new TagEngine(TagEngine.DEFAULT_PARTITIONS, TagEngine.DEFAULT_THREADS, 8, 2_000, deviceTtlMillis, 100,
+                () -> new LeastSquaresSolver(3)));
+    }
+
+    public GatewayEngine(int shardCount, int queueCapacity, ReadingQueue.Backpressure policy, int sampleEvery, PositionSolver solver,
+                         int deviceHistory, long deviceTtlMillis, int distanceWindow, TagEngine tags) {
+        this.solver = solver;
+        this.tags = tags;
+        this.distanceWindow = Math.max(1, Math.min(distanceWindow, deviceHistory));
+        shards = new Shard[Math.max(1, shardCount)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(queueCapacity, policy, sampleEvery, deviceHistory, deviceTtlMillis);
+        }
+        anchorStore = new DeviceStore(1, deviceTtlMillis);
+        // Shards wait for the aggregator rather than lose readings here; overload is shed at
+        // the shard queues according to the configured policy
+        aggregatorQueue = new ReadingQueue(queueCapacity, ReadingQueue.Backpressure.BLOCK, 1);
+    }
+
+    // Configured from GATEWAY_SHARDS, INGEST_QUEUE_CAPACITY (per shard), INGEST_BACKPRESSURE
+    // (drop-oldest|block|sample), INGEST_SAMPLE_EVERY, DEVICE_HISTORY, DEVICE_TTL_MS,
+    // DISTANCE_FILTER_WINDOW, the solver settings and the TagEngine's TAG_* settings
+    public static GatewayEngine fromSettings() {
+        return fromSettings(Settings.getInt("GATEWAY_SHARDS", DEFAULT_SHARDS));
+    }
+
+    public static GatewayEngine fromSettings(int shardCount) {
+        return new GatewayEngine(
+            shardCount,
+            Settings.getInt("INGEST_QUEUE_CAPACITY", 8192),
+            ReadingQueue.Backpressure.parse(Settings.getString("INGEST_BACKPRESSURE", null), ReadingQueue.Backpressure.DROP_OLDEST),
+            Settings.getInt("INGEST_SAMPLE_EVERY", 4),
+            PositionSolver.fromSettings(),
+            Settings.getInt("DEVICE_HISTORY", 8),
+            Settings.getLong("DEVICE_TTL_MS", 30_000),
+            Settings.getInt("DISTANCE_FILTER_WINDOW", 1),
+            TagEngine.fromSettings());
+    }
+
+    // Receives connection events and errors; defaults to stdout. May be called from any thread.
+    public void setEventListener(Consumer<String> events) {
+        this.events = events;
+    }
+
+    public void addSink(GatewaySink sink) {
+        sinks.add(sink);
+    }
+
+    // Records every message received from the broker (not those passed to submit() directly);
+    // closed by stop(). Null stops capturing.
+    public void setCapture(CaptureLog.Writer capture) {
+        this.capture = capture;
+    }
+
+    public void start() {
+        running = true;
+        for (int i = 0; i < shards.length; i++) {
+            startThread(shards[i], "gateway-shard-" + i);
+        }
+        startThread(this::aggregateLoop, "gateway-aggregator");
+    }
+
+    // The tag tick thread (and the TagEngine's workers) only once a reading names a tag
+    private void startTags() {
+        if (running && tagsStarted.compareAndSet(false, true)) startThread(this::tagLoop, "gateway-tags");
+    }
+
+    public void stop() {
+        running = false;
+        for (Thread t : threads) LockSupport.unpark(t);
+        if (client != null && client.isConnected()) {
+            try { client.disconnect(); } catch (Exception ignored) {}
+        }
+        for (Thread t : threads) {
+            try { t.join(1000); } catch (InterruptedException ex) { Thread.currentThread().interrupt(); }
+        }
+        tags.close();
+        CaptureLog.Writer c = capture;
+        if (c != null) {
+            try { c.close(); } catch (IOException ex) { events.accept("Capture close failed: " + ex.getMessage()); }
+        }
+        for (GatewaySink sink : sinks) sink.close();
+    }
+
+    public void connect(String brokerUrl, String clientId, String topic) throws MqttException {
+        connect(brokerUrl, clientId, List.of(topic));
+    }
+
+    // Subscribes to every filter (see TopicScheme.filters for zone, partition and shared ones)
+    public void connect(String brokerUrl, String clientId, List<String> filters) throws MqttException {
+        client = new MqttClient(brokerUrl, clientId, new MemoryPersistence());
+        client.setCallback(new MqttCallback() {
+            @Override
+            public void connectionLost(Throwable cause) {
+                events.accept("Connection lost: " + cause.getMessage());
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                // Runs on the Paho thread: decode and enqueue only
+                byte[] payload = message.getPayload();
+                CaptureLog.Writer c = capture;
+                if (c != null) capture(c, topic, payload);
+                submit(topic, payload);
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+                // Not needed for subscriber
+            }
+        });
+
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setAutomaticReconnect(true);
+        options.setCleanSession(true);
+        options.setConnectionTimeout(10);
+
+        client.connect(options);
+        String[] topics = filters.toArray(new String[0]);
+        int[] qos = new int[topics.length];
+        Arrays.fill(qos, 1);
+        client.subscribe(topics, qos);
+        events.accept("Connected as " + clientId + "; Subscribed to " + String.join(", ", filters));
+    }
+
+    // Decodes one payload, or every reading in a batch envelope, and routes each reading to its
+    // device's shard; returns false if anything was malformed or dropped by backpressure.
+    // Safe to call from several threads.
+    public boolean submit(String topic, byte[] payload) {
+        return submit(topic, payload, 0, payload.length);
+    }
+
+    // Same for a payload in buf[off, off + len); the buffer may be reused once this returns
+    public boolean submit(String topic, byte[] buf, int off, int len) {
+        long receivedAt = System.nanoTime();
+        if (len > 0 && buf[off] == ReadingEncoder.BATCH_V1) return submitBatch(topic, buf, off, len, receivedAt);
+        return submit(topic, buf, off, len, receivedAt);
+    }
+
+    private void capture(CaptureLog.Writer c, String topic, byte[] payload) {
+        try {
+            c.append(topic, payload, System.nanoTime());
+        } catch (IOException ex) {
+            // Keep ingesting; report once and stop capturing
+            capture = null;
+            events.accept("Capture disabled: " + ex.getMessage());
+        }
+    }
+
+    private boolean submit(String topic, byte[] buf, int off, int len, long receivedAt) {
+        ReadingDecoder decoder = decoders.get();
+        Reading reading = scratch.get();
+        int status = decoder.decode(buf, off, len, reading);
+        if (status != ReadingDecoder.OK) {
+            rejected("Received [" + topic + "]: " + new String(buf, off, len, StandardCharsets.UTF_8)
+                    + " (" + ReadingDecoder.describe(status) + " at offset " + (decoder.errorOffset() - off) + ")");
+            return false;
+        }
+        reading.setPayload(buf, off, len);
+        reading.receivedAtNanos = receivedAt;
+        reading.decodedAtNanos = System.nanoTime();
+        metrics.received.increment();
+        metrics.receiveToDecode.recordNanos(reading.decodedAtNanos - receivedAt);
+        if (reading.sentAtMillis > 0) {
+            metrics.publishToReceive.recordMicros((System.currentTimeMillis() - reading.sentAtMillis) * 1000);
+        }
+        return shardFor(reading.deviceId).queue.offer(reading);
+    }
+
+    // u8 version, u16 count, then count x (u16 length, payload); see ReadingBatcher
+    private boolean submitBatch(String topic, byte[] envelope, int off, int length, long receivedAt) {
+        if (length < 3) {
+            rejected("Received [" + topic + "]: truncated batch envelope");
+            return false;
+        }
+        int count = ((envelope[off + 1] & 0xFF) << 8) | (envelope[off + 2] & 0xFF);
+        int end = off + length;
+        int pos = off + 3;
+        boolean ok = true;
+        for (int i = 0; i < count; i++) {
+            if (end - pos < 2) {
+                rejected("Received [" + topic + "]: batch envelope truncated at item " + i + " of " + count);
+                return false;
+            }
+            int len = ((envelope[pos] & 0xFF) << 8) | (envelope[pos + 1] & 0xFF);
+            pos += 2;
+            if (end - pos < len) {
+                rejected("Received [" + topic + "]: batch envelope truncated at item " + i + " of " + count);
+                return false;
+            }
+            ok &= submit(topic, envelope, pos, len, receivedAt);
+            pos += len;
+        }
+        envelopes.increment();
+        batchedReadings.add(count);
+        return ok;
+    }
+
+    public String pollNotice() {
+        String notice = notices.poll();
+        if (notice != null) noticeCount.decrementAndGet();
+        return notice;
+    }
+
+    public GatewayMetrics metrics() {
+        return metrics;
+    }
+
+    public PositionSnapshot snapshot() {
+        return snapshot;
+    }
+
+    // Latest position table of the tracked tags
+    public TagSnapshot tagSnapshot() {
+        return tagSnapshot;
+    }
+
+    public TagEngine tags() {
+        return tags;
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    public int queueDepth() {
+        int depth = 0;
+        for (Shard shard : shards) depth += shard.queue.depth();
+        return depth;
+    }
+
+    public int queueCapacity() {
+        int capacity = 0;
+        for (Shard shard : shards) capacity += shard.queue.capacity();
+        return capacity;
+    }
+
+    public long dropped() {
+        long dropped = 0;
+        for (Shard shard : shards) dropped += shard.queue.dropped();
+        return dropped;
+    }
+
+    public long decodeErrors() {
+        return decodeErrors.sum();
+    }
+
+    // Batch envelopes received, and the mean number of readings they carried
+    public long envelopes() {
+        return envelopes.sum();
+    }
+
+    public double averageBatchSize() {
+        long n = envelopes.sum();
+        return n == 0 ? 0 : (double) batchedReadings.sum() / n;
+    }
+
+    public int deviceCount() {
+        int count = 0;
+        for (Shard shard : shards) count += shard.store.size();
+        return count;
+    }
+
+    void forEachDevice(Consumer<DeviceState> action) {
+        for (Shard shard : shards) {
+            for (DeviceState state : shard.states) {
+                if (state != null) action.accept(state);
+            }
+        }
+    }
+
+    private Shard shardFor(String deviceId) {
+        int h = deviceId.hashCode();
+        return shards[Math.floorMod(h ^ (h >>> 16), shards.length)];
+    }
+
+    private void rejected(String notice) {
+        decodeErrors.increment();
+        if (noticeCount.incrementAndGet() <= MAX_NOTICES) {
+            notices.add(notice);
+        } else {
+            noticeCount.decrementAndGet();
+        }
+    }
+
+    private void aggregateLoop() {
+        int idle = 0;
+        while (running) {
+            int n = 0, anchored = 0;
+            while (n < MAX_BATCH && aggregatorQueue.poll(aggregated)) {
+                // Tag readings are positioned by the tag tick instead
+                if (aggregated.tagId == null) {
+                    aggregate(aggregated);
+                    batchDecodedAt[anchored++] = aggregated.decodedAtNanos;
+                }
+                for (GatewaySink sink : sinks) sink.onReading(aggregated);
+                n++;
+            }
+            // Stale anchors must leave the estimate even when nothing else arrives
+            boolean evicted = anchorStore.sweepIfDue(System.nanoTime(), this::evictAnchor) > 0;
+            if (anchored > 0 || evicted) publish();
+            if (n > 0) {
+                long now = System.nanoTime();
+                for (int i = 0; i < anchored; i++) metrics.decodeToPosition.recordNanos(now - batchDecodedAt[i]);
+                metrics.positioned.add(anchored);
+                idle = 0;
+            } else {
+                idle = idle(idle);
+            }
+        }
+    }
+
+    // Solves the dirty tags every tick; a slow tick delays the next rather than piling up
+    private void tagLoop() {
+        long tickNanos = tags.tickMillis() * 1_000_000;
+        long next = System.nanoTime() + tickNanos;
+        while (running) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            next = Math.max(next + tickNanos, System.nanoTime());
+            TagSnapshot snap = tags.tick();
+            if (snap == tagSnapshot) continue;
+            tagSnapshot = snap;
+            for (GatewaySink sink : sinks) sink.onTags(snap);
+        }
+    }
+
+    private void aggregate(Reading r) {
+        long now = r.receivedAtNanos != 0 ? r.receivedAtNanos : System.nanoTime();
+        int slot = anchorStore.index(r.deviceId, now);
+        if (slot >= anchorLabels.length) anchorLabels = Arrays.copyOf(anchorLabels, Math.max(slot + 1, anchorLabels.length * 2));
+        if (anchorStore.historyCount(slot) == 0) anchorLabels[slot] = PositionSnapshot.labelFor(r.deviceId);
+        anchorStore.record(slot, r.x, r.y, r.distance, now);
+        anchors.update(slot, r.x, r.y, r.distance);
+    }
+
+    private void evictAnchor(int slot) {
+        anchors.remove(slot);
+        anchorLabels[slot] = null;
+    }
+
+    // Solve and publish a snapshot once per drained batch rather than once per reading
+    private void publish() {
+        int n = anchorStore.size();
+        String[] ids = new String[n];
+        String[] labels = new String[n];
+        double[] xs = new double[n], ys = new double[n], distances = new double[n];
+        int i = 0;
+        for (int slot = 0; slot < anchorStore.highWater() && i < n; slot++) {
+            if (anchorStore.id(slot) == null) continue;
+            ids[i] = anchorStore.id(slot);
+            labels[i] = anchorLabels[slot];
+            xs[i] = anchorStore.x(slot, 0);
+            ys[i] = anchorStore.y(slot, 0);
+            distances[i] = anchorStore.distance(slot, 0);
+            i++;
+        }
+        if (!solver.solve(anchors, estimate)) {
+            estimate[0] = estimate[1] = Double.NaN;
+        }
+        PositionSnapshot snap = new PositionSnapshot(++version, ids, labels, xs, ys, distances, estimate[0], estimate[1]);
+        snapshot = snap;
+        for (GatewaySink sink : sinks) sink.onSnapshot(snap);
+    }
+
+    private void startThread(Runnable body, String name) {
+        Thread t = new Thread(body, name);
+        t.setDaemon(true);
+        threads.add(t);
+        t.start();
+    }
+
+    // Spin briefly, then park, while a queue stays empty
+    private static int idle(int idleCount) {
+        if (idleCount < 100) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(200_000);
+        }
+        return idleCount + 1;
+    }
+}
@@ -0,0 +1,204 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+// Counters and latency histograms for one GatewayEngine. Recording is allocation-free (LongAdder
+// and LatencyHistogram) and happens on the ingest, shard and aggregator threads; reading is for
+// reports, the stats panel and JMX, from any thread.
+//
+//   publish -> receive    publisher clock (ts in the payload) to gateway clock; only meaningful
+//                         when both hosts are NTP-synced, and millisecond resolution
+//   receive -> decode     MQTT callback entry to the reading being decoded and routed
+//   decode  -> position   decoded to the first position estimate that includes the reading
+//   reading -> tag fix    decoded to the tag tick that solves it (see TagEngine)
+public class GatewayMetrics implements GatewayMetricsMBean {
+    final LatencyHistogram publishToReceive = new LatencyHistogram();
+    final LatencyHistogram receiveToDecode = new LatencyHistogram();
+    final LatencyHistogram decodeToPosition = new LatencyHistogram();
+    final LongAdder received = new LongAdder();
+    final LongAdder positioned = new LongAdder();
+    final LongAdder sequenceGaps = new LongAdder();
+    final LongAdder evictedDevices = new LongAdder();
+
+    private final GatewayEngine engine;
+
+    // Receive rate sampled at most once per second, so frequent readers see a stable value
+    private long rateSampledAtNanos = System.nanoTime();
+    private long rateSampledCount;
+    private double receiveRate;
+
+    GatewayMetrics(GatewayEngine engine) {
+        this.engine = engine;
+    }
+
+    // Registers with the platform MBean server; returns false (and leaves metrics usable) on failure
+    public boolean register(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName("mqtt.tcp:type=GatewayMetrics,name=" + ObjectName.quote(name)));
+            return true;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    public LatencyHistogram publishToReceive() {
+        return publishToReceive;
+    }
+
+    public LatencyHistogram receiveToDecode() {
+        return receiveToDecode;
+    }
+
+    public LatencyHistogram decodeToPosition() {
+        return decodeToPosition;
+    }
+
+    @Override
+    public long getReceived() {
+        return received.sum();
+    }
+
+    @Override
+    public synchronized double getReceiveRate() {
+        long now = System.nanoTime();
+        long elapsed = now - rateSampledAtNanos;
+        if (elapsed >= 1_000_000_000L) {
+            long count = received.sum();
+            receiveRate = (count - rateSampledCount) * 1e9 / elapsed;
+            rateSampledCount = count;
+            rateSampledAtNanos = now;
+        }
+        return receiveRate;
+    }
+
+    @Override
+    public long getPositioned() {
+        return positioned.sum();
+    }
+
+    @Override
+    public int getDevices() {
+        return engine.deviceCount();
+    }
+
+    @Override
+    public long getSequenceGaps() {
+        return sequenceGaps.sum();
+    }
+
+    @Override
+    public long getEvictedDevices() {
+        return evictedDevices.sum();
+    }
+
+    @Override
+    public long getDropped() {
+        return engine.dropped();
+    }
+
+    @Override
+    public long getDecodeErrors() {
+        return engine.decodeErrors();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return engine.queueDepth();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return engine.queueCapacity();
+    }
+
+    @Override
+    public int getTags() {
+        return engine.tags().size();
+    }
+
+    @Override
+    public long getTagsSolved() {
+        return engine.tags().solved();
+    }
+
+    @Override
+    public long getPublishToReceiveP50Micros() {
+        return publishToReceive.percentileMicros(50);
+    }
+
+    @Override
+    public long getPublishToReceiveP99Micros() {
+        return publishToReceive.percentileMicros(99);
+    }
+
+    @Override
+    public long getReceiveToDecodeP50Micros() {
+        return receiveToDecode.percentileMicros(50);
+    }
+
+    @Override
+    public long getReceiveToDecodeP99Micros() {
+        return receiveToDecode.percentileMicros(99);
+    }
+
+    @Override
+    public long getDecodeToPositionP50Micros() {
+        return decodeToPosition.percentileMicros(50);
+    }
+
+    @Override
+    public long getDecodeToPositionP99Micros() {
+        return decodeToPosition.percentileMicros(99);
+    }
+
+    @Override
+    public long getReadingToTagFixP99Micros() {
+        return engine.tags().readingToFix().percentileMicros(99);
+    }
+
+    @Override
+    public long getTagTickP99Micros() {
+        return engine.tags().tickTime().percentileMicros(99);
+    }
+
+    @Override
+    public String getSummary() {
+        return String.format("received %d (%.0f/s) | positioned %d | devices %d (evicted %d) | gaps %d | queue %d/%d | dropped %d | malformed %d%n",
+                    getReceived(), getReceiveRate(), getPositioned(), getDevices(), getEvictedDevices(), getSequenceGaps(),
+                    getQueueDepth(), getQueueCapacity(), getDropped(), getDecodeErrors())
+            + "publish->receive  " + publishToReceive.summary() + System.lineSeparator()
+            + "receive->decode   " + receiveToDecode.summary() + System.lineSeparator()
+            + "decode->position  " + decodeToPosition.summary()
+            + (engine.tags().solved() == 0 ? "" : String.format("%ntags %d | solved %d%nreading->tag fix  %s%ntag tick          %s",
+                    getTags(), getTagsSolved(), engine.tags().readingToFix().summary(), engine.tags().tickTime().summary()));
+    }
+
+    // Device counters are owned by the shard threads and read here without synchronisation,
+    // which is fine for a report that is stale by the time it is printed anyway
+    @Override
+    public String deviceReport(int top) {
+        List<GatewayEngine.DeviceState> devices = new ArrayList<>();
+        engine.forEachDevice(devices::add);
+        long now = System.nanoTime();
+        devices.sort((a, b) -> Double.compare(b.rate(now), a.rate(now)));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < Math.min(top, devices.size()); i++) {
+            GatewayEngine.DeviceState d = devices.get(i);
+            if (i > 0) sb.append(System.lineSeparator());
+            sb.append(String.format("%-32s %8.1f/s  messages %d  gaps %d", d.deviceId, d.rate(now), d.messages, d.gaps));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void resetLatencies() {
+        publishToReceive.reset();
+        receiveToDecode.reset();
+        decodeToPosition.reset();
+        engine.tags().readingToFix().reset();
+        engine.tags().tickTime().reset();
+    }
+}
@@ -0,0 +1,34 @@
+// JMX view of GatewayMetrics (registered as mqtt.tcp:type=GatewayMetrics,name=<client id>).
+// Latencies are in microseconds; rates are readings per second over the last second or so.
+public interface GatewayMetricsMBean {
+    long getReceived();
+    double getReceiveRate();
+    long getPositioned();
+    int getDevices();
+    // Devices dropped after DEVICE_TTL_MS of silence
+    long getEvictedDevices();
+    long getSequenceGaps();
+    long getDropped();
+    long getDecodeErrors();
+    int getQueueDepth();
+    int getQueueCapacity();
+    // Tracked tags, and tag fixes computed so far
+    int getTags();
+    long getTagsSolved();
+
+    long getPublishToReceiveP50Micros();
+    long getPublishToReceiveP99Micros();
+    long getReceiveToDecodeP50Micros();
+    long getReceiveToDecodeP99Micros();
+    long getDecodeToPositionP50Micros();
+    long getDecodeToPositionP99Micros();
+    long getReadingToTagFixP99Micros();
+    long getTagTickP99Micros();
+
+    String getSummary();
+
+    // The top devices by message rate, one per line
+    String deviceReport(int top);
+
+    void resetLatencies();
+}
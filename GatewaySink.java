@@ -0,0 +1,16 @@
+// Receives the engine's output on its aggregator thread (onTags on the tag tick thread).
+// Implementations must return quickly
+// (hand work off to their own thread or queue if it may block) and must copy anything they
+// keep from the Reading, which is reused for the next message.
+public interface GatewaySink {
+    // Every accepted reading, in per-device order, after its distance has been computed
+    void onReading(Reading reading);
+
+    // Every new snapshot, at most once per processed batch
+    void onSnapshot(PositionSnapshot snapshot);
+
+    // Every new tag position table, at most once per tag tick
+    default void onTags(TagSnapshot tags) {}
+
+    default void close() {}
+}
@@ -0,0 +1,131 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Runs the GatewayEngine without Swing, for servers without a display:
+//
+//   java -cp .:lib/paho-mqtt-client.jar HeadlessGateway --shards=4 --file=positions.csv --republish-topic=sensor/position
+//
+// Options (each also readable from GATEWAY_<NAME>, e.g. GATEWAY_SHARDS):
+//   --broker, --topic (a literal filter, instead of the TOPIC_TEMPLATE subscription),
+//   --zones (z1,z2), --partitions (0-3,8, or i/N for gateway i of N), --share-group,
+//   --shards, --file, --file-readings=true, --republish-topic,
+//   --republish-interval (ms), --status-interval (s, 0 disables the status line),
+//   --stats-file (appends metrics and the busiest devices), --stats-interval (s), --stats-devices,
+//   --capture (directory to record every received message to, for CaptureReplay),
+//   --capture-segment-mb,
+//   --history (directory for the position history, see PositionHistory), --history-readings=false
+//
+// Metrics are also published over JMX as mqtt.tcp:type=GatewayMetrics.
+public class HeadlessGateway {
+    private static final String BROKER_URL = "tcp://localhost:1883";
+    private static final String CLIENT_ID_PREFIX = "HeadlessGateway";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = Settings.parseArgs(args);
+        String brokerUrl = option(options, "broker", BROKER_URL);
+        String topic = option(options, "topic", null);
+        List<String> filters = topic != null ? List.of(topic) : TopicScheme.fromSettings().filters(
+            option(options, "zones", null), option(options, "partitions", null), option(options, "share-group", null));
+        String suffix = System.getenv("CLIENT_SUFFIX");
+        if (suffix == null || suffix.isBlank()) {
+            suffix = java.util.UUID.randomUUID().toString().substring(0, 8);
+        }
+        String clientId = CLIENT_ID_PREFIX + "-" + suffix;
+
+        GatewayEngine engine = GatewayEngine.fromSettings(
+            Integer.parseInt(option(options, "shards", Integer.toString(GatewayEngine.DEFAULT_SHARDS))));
+
+        String file = option(options, "file", null);
+        if (file != null) {
+            engine.addSink(new FileSink(Paths.get(file), Boolean.parseBoolean(option(options, "file-readings", "false"))));
+        }
+        String republishTopic = option(options, "republish-topic", null);
+        if (republishTopic != null) {
+            engine.addSink(new MqttRepublishSink(brokerUrl, clientId + "-out", republishTopic, clientId,
+                    Long.parseLong(option(options, "republish-interval", "100"))));
+        }
+
+        String history = option(options, "history", null);
+        if (history != null) {
+            engine.addSink(PositionHistory.Writer.fromSettings(Paths.get(history),
+                    Boolean.parseBoolean(option(options, "history-readings", "true"))));
+            System.out.println("Recording position history to " + history);
+        }
+
+        String statsFile = option(options, "stats-file", null);
+        if (statsFile != null) {
+            dumpStats(engine.metrics(), Paths.get(statsFile),
+                    Long.parseLong(option(options, "stats-interval", "10")),
+                    Integer.parseInt(option(options, "stats-devices", "10")));
+        }
+
+        String capture = option(options, "capture", null);
+        if (capture != null) {
+            engine.setCapture(new CaptureLog.Writer(Paths.get(capture),
+                    Long.parseLong(option(options, "capture-segment-mb", "64")) << 20));
+            System.out.println("Capturing received messages to " + capture);
+        }
+
+        engine.metrics().register(clientId);
+        engine.start();
+        engine.connect(brokerUrl, clientId, filters);
+        Runtime.getRuntime().addShutdownHook(new Thread(engine::stop));
+        System.out.println("Gateway running with " + engine.shardCount() + " shard(s); Ctrl+C to stop");
+
+        long interval = Long.parseLong(option(options, "status-interval", "5")) * 1000;
+        String notice;
+        while (true) {
+            Thread.sleep(interval > 0 ? interval : 1000);
+            while ((notice = engine.pollNotice()) != null) System.out.println(notice);
+            if (interval <= 0) continue;
+            PositionSnapshot snap = engine.snapshot();
+            TagSnapshot tags = engine.tagSnapshot();
+            System.out.printf("anchors %d | position %s | tags %d (%d fixed) | queue %d/%d | dropped %d | malformed %d | batches %d (avg %.1f)%n",
+                    snap.size(),
+                    snap.hasEstimate() ? String.format("(%.2f, %.2f)", snap.estimateX, snap.estimateY) : "-",
+                    engine.tags().size(), tags.size(),
+                    engine.queueDepth(), engine.queueCapacity(), engine.dropped(), engine.decodeErrors(),
+                    engine.envelopes(), engine.averageBatchSize());
+        }
+    }
+
+    // Appends a timestamped metrics block to the file every intervalSeconds
+    private static void dumpStats(GatewayMetrics metrics, Path path, long intervalSeconds, int topDevices) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "gateway-stats");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                out.write("== " + Instant.now());
+                out.newLine();
+                out.write(metrics.getSummary());
+                out.newLine();
+                String devices = metrics.deviceReport(topDevices);
+                if (!devices.isEmpty()) {
+                    out.write(devices);
+                    out.newLine();
+                }
+            } catch (IOException ex) {
+                System.err.println("Stats dump to " + path + " failed: " + ex.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private static String option(Map<String, String> options, String name, String def) {
+        return Settings.option(options, "GATEWAY_", name, def);
+    }
+}
@@ -0,0 +1,67 @@
+// Weighted linear least squares over every known anchor, read straight from the running
+// normal-equation sums in AnchorSet, optionally refined with a few Gauss-Newton iterations on
+// the true range residuals. Three anchors take the closed-form fast path; degenerate geometry
+// falls back to the closed form on the three closest anchors.
+public class LeastSquaresSolver implements PositionSolver {
+    private final int refineIterations;
+    private final TrilaterationSolver closedForm = new TrilaterationSolver();
+
+    public LeastSquaresSolver(int refineIterations) {
+        this.refineIterations = Math.max(0, refineIterations);
+    }
+
+    @Override
+    public boolean solve(AnchorSet anchors, double[] out) {
+        if (anchors.size() <= 3) return closedForm.solve(anchors, out);
+        if (!anchors.solveNormalEquations(out)) return closedForm.solve(anchors, out);
+        for (int i = 0; i < refineIterations; i++) {
+            if (!refine(anchors, out)) break;
+        }
+        return true;
+    }
+
+    // One Gauss-Newton step minimising sum w_i (|p - a_i| - d_i)^2 with w_i = 1/d_i^2;
+    // returns false once the step stops improving the cost
+    private boolean refine(AnchorSet anchors, double[] p) {
+        double jxx = 0, jxy = 0, jyy = 0, gx = 0, gy = 0, cost = 0;
+        for (int i = 0; i < anchors.highWater(); i++) {
+            if (!anchors.isActive(i)) continue;
+            double dx = p[0] - anchors.x(i);
+            double dy = p[1] - anchors.y(i);
+            double range = Math.sqrt(dx * dx + dy * dy);
+            if (range < 1e-9) continue;
+            double d = Math.max(anchors.distance(i), 1.0);
+            double w = 1.0 / (d * d);
+            double r = range - anchors.distance(i);
+            double ux = dx / range, uy = dy / range;
+            jxx += w * ux * ux;
+            jxy += w * ux * uy;
+            jyy += w * uy * uy;
+            gx += w * ux * r;
+            gy += w * uy * r;
+            cost += w * r * r;
+        }
+        double det = jxx * jyy - jxy * jxy;
+        if (!(Math.abs(det) > 1e-12)) return false;
+        double stepX = (jyy * gx - jxy * gy) / det;
+        double stepY = (jxx * gy - jxy * gx) / det;
+        double nx = p[0] - stepX, ny = p[1] - stepY;
+        if (cost(anchors, nx, ny) >= cost) return false;
+        p[0] = nx;
+        p[1] = ny;
+        return stepX * stepX + stepY * stepY > 1e-8;
+    }
+
+    private static double cost(AnchorSet anchors, double px, double py) {
+        double cost = 0;
+        for (int i = 0; i < anchors.highWater(); i++) {
+            if (!anchors.isActive(i)) continue;
+            double dx = px - anchors.x(i);
+            double dy = py - anchors.y(i);
+            double d = Math.max(anchors.distance(i), 1.0);
+            double r = Math.sqrt(dx * dx + dy * dy) - anchors.distance(i);
+            cost += r * r / (d * d);
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,337 @@
+import org.eclipse.paho.client.mqttv3.*;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Headless publisher that simulates many devices in one JVM for load-testing a gateway.
+// Devices are ticked by a scheduled executor and published through MqttAsyncClient, spread
+// over one or more connections, each with a bounded in-flight window. Prints the achieved
+// publish rate and ack latency when the run ends. With --batch-size > 1 each connection packs
+// readings into envelopes of up to that many readings, sent at the latest --batch-linger-ms
+// after the first one was added.
+//
+// With --tags=N the devices act as fixed anchors around N moving tags instead: each tag is heard
+// by --tag-anchors devices, and every device tick publishes one reading per tag it hears, with
+// the RSSI derived from the true anchor-tag distance.
+//
+// Topics follow TOPIC_TEMPLATE (see TopicScheme), with devices spread round robin over --zones
+// zones z0, z1, ...; when batching, readings are batched per connection and batch topic.
+//
+//   java -cp .:lib/paho-mqtt-client.jar SwingPublisher --headless --devices=500 --rate=5 --duration=60
+//
+// Every option can also be given as an environment variable, e.g. --devices as LOADGEN_DEVICES.
+public class LoadGenerator {
+    private static final String BROKER_URL = "tcp://localhost:1883";
+    private static final String CLIENT_ID_PREFIX = "LoadGenerator";
+
+    enum Movement { RANDOM_WALK, CIRCLE, STATIC }
+
+    private final int devices;
+    private final double ratePerDevice;
+    private final int durationSeconds;
+    private final Movement movement;
+    private final int qos;
+    private final ReadingEncoder.Format format;
+    private final int connections;
+    private final int maxInflight;
+    private final int threads;
+    private final String brokerUrl;
+    private final int batchSize;
+    private final long batchLingerMillis;
+    private final int tags;
+    private final int tagAnchors;
+    private final int zones;
+    private final TopicScheme topics = TopicScheme.fromSettings();
+    private final String suffix;
+
+    private final MqttAsyncClient[] clients;
+    private final Semaphore[] windows;
+    // Only when batching: one per connection and batch topic, and each device's batcher
+    private final ReadingBatcher[] batchers;
+    private final int[] batcherConnections;
+    private final String[] batcherTopics;
+    private final int[] deviceBatchers;
+
+    // Device state; each device is only ever touched by its own scheduled task
+    private final byte[][] deviceIds;
+    private final String[] deviceTopics;
+    private final double[] xs, ys, angles, centerXs, centerYs;
+    private final long[] sequences;
+    // Tag state; a tag is moved only by the first device that hears it
+    private final byte[][] tagIds;
+    private final double[] tagXs, tagYs;
+    // Tags heard by each device
+    private final int[][] heard;
+
+    // Readings, plus the MQTT messages carrying them (fewer when batching)
+    private final LongAdder published = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder acked = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LatencyHistogram ackLatency = new LatencyHistogram();
+    private final ThreadLocal<ReadingEncoder> encoders = ThreadLocal.withInitial(ReadingEncoder::new);
+
+    LoadGenerator(Map<String, String> options) {
+        devices = intOption(options, "devices", 100);
+        ratePerDevice = doubleOption(options, "rate", 1.0);
+        durationSeconds = intOption(options, "duration", 30);
+        movement = Movement.valueOf(option(options, "movement", "random-walk").toUpperCase().replace('-', '_'));
+        qos = intOption(options, "qos", 1);
+        format = ReadingEncoder.Format.parse(option(options, "format", "json"), ReadingEncoder.Format.JSON);
+        connections = Math.max(1, Math.min(devices, intOption(options, "connections", 1)));
+        maxInflight = intOption(options, "max-inflight", 1000);
+        threads = intOption(options, "threads", Runtime.getRuntime().availableProcessors());
+        brokerUrl = option(options, "broker", BROKER_URL);
+        batchSize = intOption(options, "batch-size", 1);
+        batchLingerMillis = intOption(options, "batch-linger-ms", 20);
+        tags = intOption(options, "tags", 0);
+        tagAnchors = Math.max(1, Math.min(devices, intOption(options, "tag-anchors", 4)));
+        zones = Math.max(1, intOption(options, "zones", 1));
+        String s = System.getenv("CLIENT_SUFFIX");
+        suffix = (s == null || s.isBlank()) ? java.util.UUID.randomUUID().toString().substring(0, 8) : s;
+
+        clients = new MqttAsyncClient[connections];
+        windows = new Semaphore[connections];
+        deviceIds = new byte[devices][];
+        deviceTopics = new String[devices];
+        deviceBatchers = new int[devices];
+        xs = new double[devices];
+        ys = new double[devices];
+        angles = new double[devices];
+        centerXs = new double[devices];
+        centerYs = new double[devices];
+        sequences = new long[devices];
+        Random random = new Random();
+        Map<String, Integer> batchKeys = new LinkedHashMap<>();
+        for (int i = 0; i < devices; i++) {
+            String id = "LoadGen-" + suffix + "-" + i;
+            String zone = "z" + (i % zones);
+            deviceIds[i] = id.getBytes(StandardCharsets.UTF_8);
+            deviceTopics[i] = topics.topicFor(zone, id);
+            String key = (i % connections) + " " + topics.batchTopicFor(zone, id);
+            deviceBatchers[i] = batchKeys.computeIfAbsent(key, k -> batchKeys.size());
+            xs[i] = centerXs[i] = -50 + random.nextDouble() * 100;
+            ys[i] = centerYs[i] = -50 + random.nextDouble() * 100;
+            angles[i] = random.nextDouble() * 2 * Math.PI;
+        }
+        batchers = new ReadingBatcher[batchSize > 1 ? batchKeys.size() : 0];
+        batcherConnections = new int[batchKeys.size()];
+        batcherTopics = new String[batchKeys.size()];
+        for (Map.Entry<String, Integer> e : batchKeys.entrySet()) {
+            int space = e.getKey().indexOf(' ');
+            batcherConnections[e.getValue()] = Integer.parseInt(e.getKey().substring(0, space));
+            batcherTopics[e.getValue()] = e.getKey().substring(space + 1);
+        }
+        tagIds = new byte[tags][];
+        tagXs = new double[tags];
+        tagYs = new double[tags];
+        heard = new int[devices][];
+        int[] heardCounts = new int[devices];
+        int stride = Math.max(1, devices / tagAnchors);
+        for (int t = 0; t < tags; t++) {
+            tagIds[t] = ("Tag-" + suffix + "-" + t).getBytes(StandardCharsets.UTF_8);
+            tagXs[t] = -50 + random.nextDouble() * 100;
+            tagYs[t] = -50 + random.nextDouble() * 100;
+            for (int j = 0; j < tagAnchors; j++) heardCounts[anchorOf(t, j, stride)]++;
+        }
+        for (int i = 0; i < devices; i++) heard[i] = new int[heardCounts[i]];
+        java.util.Arrays.fill(heardCounts, 0);
+        for (int t = 0; t < tags; t++) {
+            for (int j = 0; j < tagAnchors; j++) {
+                int d = anchorOf(t, j, stride);
+                heard[d][heardCounts[d]++] = t;
+            }
+        }
+    }
+
+    // j-th anchor of tag t: evenly spaced device indexes, so every tag gets distinct anchors
+    private int anchorOf(int t, int j, int stride) {
+        return (t + j * stride) % devices;
+    }
+
+    void run() throws Exception {
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setAutomaticReconnect(true);
+        options.setCleanSession(true);
+        options.setConnectionTimeout(10);
+        options.setMaxInflight(maxInflight);
+        for (int c = 0; c < connections; c++) {
+            clients[c] = new MqttAsyncClient(brokerUrl, CLIENT_ID_PREFIX + "-" + suffix + "-c" + c, new MemoryPersistence());
+            clients[c].connect(options).waitForCompletion();
+            windows[c] = new Semaphore(maxInflight);
+        }
+        for (int b = 0; b < batchers.length; b++) {
+            final int batcher = b;
+            batchers[b] = new ReadingBatcher(batchSize, batchLingerMillis,
+                    (envelope, items) -> send(batcherConnections[batcher], batcherTopics[batcher], envelope, items));
+        }
+        System.out.printf("Connected %d connection(s) to %s; %d devices in %d zone(s)%s at %.2f Hz, QoS %d, %s, %s, %s, for %ds%n",
+                connections, brokerUrl, devices, zones,
+                tags > 0 ? " hearing " + tags + " tags (" + tagAnchors + " anchors each)" : "", ratePerDevice, qos, format, movement,
+                batchers.length > 0 ? "batches of " + batchSize + " / " + batchLingerMillis + " ms over " + batchers.length + " batcher(s)" : "unbatched",
+                durationSeconds);
+        System.out.println("Topics like " + deviceTopics[0]);
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(threads);
+        long periodNanos = (long) (1_000_000_000L / ratePerDevice);
+        Random random = new Random();
+        long start = System.nanoTime();
+        for (int i = 0; i < devices; i++) {
+            final int device = i;
+            // Spread the first tick over one period so devices don't publish in lockstep
+            long initialDelay = (long) (random.nextDouble() * periodNanos);
+            scheduler.scheduleAtFixedRate(() -> tick(device), initialDelay, periodNanos, TimeUnit.NANOSECONDS);
+        }
+        scheduler.awaitTermination(durationSeconds, TimeUnit.SECONDS);
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        for (ReadingBatcher batcher : batchers) batcher.close();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        // Give outstanding acks a moment to arrive before reporting
+        for (int c = 0; c < connections; c++) {
+            windows[c].tryAcquire(maxInflight, 5, TimeUnit.SECONDS);
+        }
+        report(elapsed);
+        for (MqttAsyncClient client : clients) {
+            try {
+                client.disconnect().waitForCompletion(5000);
+                client.close();
+            } catch (MqttException ignored) {}
+        }
+    }
+
+    private void tick(int device) {
+        move(device);
+        if (tags > 0) {
+            tickTags(device);
+            return;
+        }
+        int c = device % connections;
+        double rssi = -60 + (Math.random() - 0.5) * 1;
+        ReadingEncoder encoder = encoders.get();
+        encoder.encode(format, deviceIds[device], xs[device], ys[device], rssi, System.currentTimeMillis(), ++sequences[device]);
+        if (batchers.length > 0) {
+            batchers[deviceBatchers[device]].add(encoder.buffer(), 0, encoder.length());
+        } else {
+            send(c, deviceTopics[device], encoder.toByteArray(), 1);
+        }
+    }
+
+    // One reading per tag the device hears; unbatched, each is its own message
+    private void tickTags(int device) {
+        int c = device % connections;
+        ReadingEncoder encoder = encoders.get();
+        long now = System.currentTimeMillis();
+        for (int t : heard[device]) {
+            if (t % devices == device) {
+                tagXs[t] = Math.max(-50, Math.min(50, tagXs[t] + (Math.random() - 0.5) * 2));
+                tagYs[t] = Math.max(-50, Math.min(50, tagYs[t] + (Math.random() - 0.5) * 2));
+            }
+            double d = Math.max(1, Math.hypot(tagXs[t] - xs[device], tagYs[t] - ys[device]));
+            // Inverse of the gateway's model (-40 dBm at 1 m, path loss exponent 2), plus noise
+            double rssi = -40 - 20 * Math.log10(d) + (Math.random() - 0.5) * 1;
+            encoder.encode(format, deviceIds[device], tagIds[t], xs[device], ys[device], rssi, now, ++sequences[device]);
+            if (batchers.length > 0) {
+                batchers[deviceBatchers[device]].add(encoder.buffer(), 0, encoder.length());
+            } else {
+                send(c, deviceTopics[device], encoder.toByteArray(), 1);
+            }
+        }
+    }
+
+    // Publishes one message carrying items readings (1 unless it is a batch envelope)
+    private void send(int c, String topic, byte[] payload, int items) {
+        if (!windows[c].tryAcquire()) {
+            // In-flight window is full: the broker is not keeping up with the configured rate
+            skipped.add(items);
+            return;
+        }
+        long sentAt = System.nanoTime();
+        try {
+            clients[c].publish(topic, payload, qos, false, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                    ackLatency.recordNanos(System.nanoTime() - sentAt);
+                    acked.add(items);
+                    windows[c].release();
+                }
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable ex) {
+                    failed.add(items);
+                    windows[c].release();
+                }
+            });
+            published.add(items);
+            messages.increment();
+        } catch (MqttException ex) {
+            failed.add(items);
+            windows[c].release();
+        }
+    }
+
+    private void move(int i) {
+        switch (movement) {
+            case RANDOM_WALK:
+                // Simulate small random walk in position, clamped like SwingPublisher
+                xs[i] = Math.max(-50, Math.min(50, xs[i] + (Math.random() - 0.5) * 2));
+                ys[i] = Math.max(-50, Math.min(50, ys[i] + (Math.random() - 0.5) * 2));
+                break;
+            case CIRCLE:
+                angles[i] += 0.05;
+                xs[i] = centerXs[i] + 20 * Math.cos(angles[i]);
+                ys[i] = centerYs[i] + 20 * Math.sin(angles[i]);
+                break;
+            case STATIC:
+            default:
+                break;
+        }
+    }
+
+    private void report(double elapsedSeconds) {
+        System.out.printf("Ran %.1fs: published %d readings (%.1f/s), acked %d (%.1f/s), failed %d, skipped (window full) %d%n",
+                elapsedSeconds, published.sum(), published.sum() / elapsedSeconds,
+                acked.sum(), acked.sum() / elapsedSeconds, failed.sum(), skipped.sum());
+        System.out.printf("MQTT messages %d (%.1f msg/s)%n", messages.sum(), messages.sum() / elapsedSeconds);
+        System.out.println("Ack latency: " + ackLatency.summary());
+        if (batchers.length <= 4) {
+            for (int b = 0; b < batchers.length; b++) {
+                System.out.println("Batching c" + batcherConnections[b] + " " + batcherTopics[b] + ": " + batchers[b].summary());
+            }
+        } else {
+            long batches = 0, items = 0;
+            for (ReadingBatcher batcher : batchers) {
+                batches += batcher.batches();
+                items += batcher.items();
+            }
+            System.out.printf("Batching over %d batchers: %d batches, avg %.1f readings/batch%n",
+                    batchers.length, batches, batches == 0 ? 0 : (double) items / batches);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator(Settings.parseArgs(args)).run();
+        System.exit(0);
+    }
+
+    static String option(Map<String, String> options, String name, String def) {
+        return Settings.option(options, "LOADGEN_", name, def);
+    }
+
+    static int intOption(Map<String, String> options, String name, int def) {
+        return Integer.parseInt(option(options, name, Integer.toString(def)));
+    }
+
+    static double doubleOption(Map<String, String> options, String name, double def) {
+        return Double.parseDouble(option(options, name, Double.toString(def)));
+    }
+}
@@ -0,0 +1,352 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+// Minimal in-process MQTT 3.1.1 broker, a stand-in for Mosquitto in benchmarks, replays and
+// local experiments that must run without Docker or a network. It supports what this project
+// uses: CONNECT, SUBSCRIBE/UNSUBSCRIBE with + and # wildcards, PUBLISH at QoS 0/1 (QoS 2 is
+// acknowledged and delivered as QoS 1), PING and DISCONNECT. There are no retained messages,
+// persistent sessions, authentication or redelivery.
+//
+// Shared subscriptions ($share/<group>/<filter>, as in MQTT 5 and accepted here from 3.1.1
+// clients) deliver each message to one member of the group, chosen by hashing the topic: a given
+// topic always reaches the same member while the group is unchanged, so per-device order holds
+// when devices publish on their own topics (see TopicScheme).
+//
+//   java -cp . LocalBroker [port]
+public class LocalBroker implements AutoCloseable {
+    private static final int CONNECT = 1, CONNACK = 2, PUBLISH = 3, PUBACK = 4, PUBREC = 5, PUBREL = 6,
+        PUBCOMP = 7, SUBSCRIBE = 8, SUBACK = 9, UNSUBSCRIBE = 10, UNSUBACK = 11, PINGREQ = 12,
+        PINGRESP = 13, DISCONNECT = 14;
+
+    private static final String SHARE_PREFIX = "$share/";
+
+    private static final class Subscription {
+        final Session session;
+        // As subscribed, and without any $share/<group>/ prefix
+        final String requested;
+        final String filter;
+        // Null unless shared
+        final String group;
+        final int qos;
+        Subscription(Session session, String requested, int qos) {
+            this.session = session;
+            this.requested = requested;
+            this.qos = qos;
+            int groupEnd = requested.startsWith(SHARE_PREFIX) ? requested.indexOf('/', SHARE_PREFIX.length()) : -1;
+            group = groupEnd > 0 ? requested.substring(SHARE_PREFIX.length(), groupEnd) : null;
+            filter = groupEnd > 0 ? requested.substring(groupEnd + 1) : requested;
+        }
+    }
+
+    // Members of one $share/<group>/<filter>, in subscription order
+    private static final class SharedGroup {
+        final String filter;
+        final List<Subscription> members = new CopyOnWriteArrayList<>();
+        SharedGroup(String filter) {
+            this.filter = filter;
+        }
+    }
+
+    private final class Session implements Runnable {
+        final Socket socket;
+        final DataInputStream in;
+        final OutputStream out;
+        String clientId = "?";
+        int nextPacketId = 1;
+
+        Session(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    int header = in.read();
+                    if (header < 0) break;
+                    int length = readRemainingLength(in);
+                    byte[] body = new byte[length];
+                    in.readFully(body);
+                    if (!handle(header >>> 4, header & 0x0F, body)) break;
+                }
+            } catch (EOFException | SocketException ex) {
+                // Client went away
+            } catch (IOException ex) {
+                System.err.println("LocalBroker: " + clientId + ": " + ex.getMessage());
+            } finally {
+                sessions.remove(this);
+                subscriptions.removeIf(s -> s.session == this);
+                removeShared(s -> s.session == this);
+                try { socket.close(); } catch (IOException ignored) {}
+            }
+        }
+
+        private boolean handle(int type, int flags, byte[] body) throws IOException {
+            switch (type) {
+                case CONNECT: {
+                    int pos = 2 + u16(body, 0);     // protocol name
+                    pos += 1 + 1 + 2;                // level, flags, keep-alive
+                    clientId = new String(body, pos + 2, u16(body, pos), StandardCharsets.UTF_8);
+                    send(CONNACK << 4, new byte[]{0, 0});
+                    return true;
+                }
+                case PUBLISH: {
+                    int qos = (flags >>> 1) & 3;
+                    int topicLength = u16(body, 0);
+                    String topic = new String(body, 2, topicLength, StandardCharsets.UTF_8);
+                    int pos = 2 + topicLength;
+                    int packetId = 0;
+                    if (qos > 0) {
+                        packetId = u16(body, pos);
+                        pos += 2;
+                    }
+                    byte[] payload = java.util.Arrays.copyOfRange(body, pos, body.length);
+                    published.increment();
+                    route(topic, payload, Math.min(qos, 1));
+                    if (qos == 1) send(PUBACK << 4, new byte[]{(byte) (packetId >>> 8), (byte) packetId});
+                    if (qos == 2) send(PUBREC << 4, new byte[]{(byte) (packetId >>> 8), (byte) packetId});
+                    return true;
+                }
+                case PUBREL:
+                    send(PUBCOMP << 4, new byte[]{body[0], body[1]});
+                    return true;
+                case SUBSCRIBE: {
+                    int pos = 2;
+                    byte[] ack = new byte[2 + (body.length / 3)];
+                    ack[0] = body[0];
+                    ack[1] = body[1];
+                    int granted = 2;
+                    while (pos < body.length) {
+                        int len = u16(body, pos);
+                        String filter = new String(body, pos + 2, len, StandardCharsets.UTF_8);
+                        int qos = Math.min(body[pos + 2 + len] & 3, 1);
+                        pos += 2 + len + 1;
+                        addSubscription(new Subscription(this, filter, qos));
+                        ack[granted++] = (byte) qos;
+                    }
+                    send(SUBACK << 4, java.util.Arrays.copyOf(ack, granted));
+                    return true;
+                }
+                case UNSUBSCRIBE: {
+                    int pos = 2;
+                    while (pos < body.length) {
+                        int len = u16(body, pos);
+                        String filter = new String(body, pos + 2, len, StandardCharsets.UTF_8);
+                        pos += 2 + len;
+                        subscriptions.removeIf(s -> s.session == this && s.requested.equals(filter));
+                        removeShared(s -> s.session == this && s.requested.equals(filter));
+                    }
+                    send(UNSUBACK << 4, new byte[]{body[0], body[1]});
+                    return true;
+                }
+                case PINGREQ:
+                    send(PINGRESP << 4, new byte[0]);
+                    return true;
+                case DISCONNECT:
+                    return false;
+                case PUBACK:
+                case PUBREC:
+                case PUBCOMP:
+                default:
+                    // Acks for our QoS 1 deliveries: nothing is retried, so nothing to track
+                    return true;
+            }
+        }
+
+        void deliver(String topic, byte[] payload, int qos) {
+            byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+            int length = 2 + topicBytes.length + (qos > 0 ? 2 : 0) + payload.length;
+            try {
+                synchronized (out) {
+                    out.write((PUBLISH << 4) | (qos << 1));
+                    writeRemainingLength(out, length);
+                    out.write(topicBytes.length >>> 8);
+                    out.write(topicBytes.length);
+                    out.write(topicBytes);
+                    if (qos > 0) {
+                        int id = nextPacketId;
+                        nextPacketId = id == 0xFFFF ? 1 : id + 1;
+                        out.write(id >>> 8);
+                        out.write(id);
+                    }
+                    out.write(payload);
+                    out.flush();
+                }
+                delivered.increment();
+            } catch (IOException ex) {
+                try { socket.close(); } catch (IOException ignored) {}
+            }
+        }
+
+        private void send(int header, byte[] body) throws IOException {
+            synchronized (out) {
+                out.write(header);
+                writeRemainingLength(out, body.length);
+                out.write(body);
+                out.flush();
+            }
+        }
+    }
+
+    private final ServerSocket server;
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final Map<String, SharedGroup> sharedGroups = new ConcurrentHashMap<>();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+
+    // Port 0 picks a free port; see port()
+    public LocalBroker(int port) throws IOException {
+        server = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "local-broker-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    public String url() {
+        return "tcp://127.0.0.1:" + port();
+    }
+
+    public long published() {
+        return published.sum();
+    }
+
+    public long delivered() {
+        return delivered.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        // Publishers too, so clients see the broker go away
+        for (Session session : sessions) {
+            try { session.socket.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Session session = new Session(server.accept());
+                sessions.add(session);
+                Thread t = new Thread(session, "local-broker-session");
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException ex) {
+                if (!server.isClosed()) System.err.println("LocalBroker: " + ex.getMessage());
+            }
+        }
+    }
+
+    private void addSubscription(Subscription s) {
+        if (s.group == null) {
+            subscriptions.add(s);
+            return;
+        }
+        sharedGroups.computeIfAbsent(s.requested, k -> new SharedGroup(s.filter)).members.add(s);
+    }
+
+    private void removeShared(Predicate<Subscription> which) {
+        for (SharedGroup g : sharedGroups.values()) g.members.removeIf(which);
+    }
+
+    private void route(String topic, byte[] payload, int qos) {
+        for (Subscription s : subscriptions) {
+            if (matches(s.filter, topic)) s.session.deliver(topic, payload, Math.min(qos, s.qos));
+        }
+        if (sharedGroups.isEmpty()) return;
+        int h = topic.hashCode();
+        h ^= h >>> 16;
+        for (SharedGroup g : sharedGroups.values()) {
+            if (!matches(g.filter, topic)) continue;
+            List<Subscription> members = g.members;
+            int n = members.size();
+            if (n == 0) continue;
+            Subscription s;
+            try {
+                s = members.get(Math.floorMod(h, n));
+            } catch (IndexOutOfBoundsException ex) {
+                // A member left between size() and get(); the next message sees the new group
+                continue;
+            }
+            s.session.deliver(topic, payload, Math.min(qos, s.qos));
+        }
+    }
+
+    // MQTT topic filter matching with single-level '+' and multi-level '#' wildcards
+    static boolean matches(String filter, String topic) {
+        int f = 0, t = 0;
+        int fl = filter.length(), tl = topic.length();
+        while (f < fl) {
+            char c = filter.charAt(f);
+            if (c == '#') return true;
+            if (c == '+') {
+                while (t < tl && topic.charAt(t) != '/') t++;
+                f++;
+                continue;
+            }
+            if (t >= tl) {
+                // "a/#" also matches "a"
+                return filter.startsWith("/#", f);
+            }
+            if (c != topic.charAt(t)) return false;
+            f++;
+            t++;
+        }
+        return t == tl;
+    }
+
+    private static int u16(byte[] b, int pos) {
+        return ((b[pos] & 0xFF) << 8) | (b[pos + 1] & 0xFF);
+    }
+
+    private static int readRemainingLength(InputStream in) throws IOException {
+        int value = 0, shift = 0, b;
+        do {
+            b = in.read();
+            if (b < 0) throw new EOFException();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < 28);
+        return value;
+    }
+
+    private static void writeRemainingLength(OutputStream out, int length) throws IOException {
+        do {
+            int b = length & 0x7F;
+            length >>>= 7;
+            out.write(length > 0 ? b | 0x80 : b);
+        } while (length > 0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 1883;
+        LocalBroker broker = new LocalBroker(port);
+        System.out.println("LocalBroker listening on " + broker.url() + "; Ctrl+C to stop");
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,230 @@
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.BitSet;
+import javax.swing.AbstractListModel;
+
+// Fixed-capacity log for the subscriber window. Rows live in a ring of primitive columns and the
+// payload bytes in one shared circular slab, so memory stays flat however long the gateway runs.
+// Cell text is only formatted when a row is painted, through a small cache keyed by row sequence.
+// EDT only: append rows, then endBatch() to fire one removed/added event pair for the batch.
+public class LogModel extends AbstractListModel<LogModel.Row> {
+    private static final byte KIND_READING = 0;
+    private static final byte KIND_TEXT = 1;
+
+    // Width of the wrapped JSON lines in an expanded row
+    private static final int PAYLOAD_WRAP = 48;
+    private static final int RENDER_CACHE_SIZE = 128;
+    private static final DateTimeFormatter TIME_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    // Flyweight handed to the JList for each ring slot; never reallocated
+    public static final class Row {
+        final int slot;
+        Row(int slot) {
+            this.slot = slot;
+        }
+    }
+
+    private final int capacity;
+    private final Row[] rows;
+    private final long[] sequences;
+    private final long[] timestamps;
+    private final double[] xs, ys, rssis;
+    // Device ids are shared with the decoder's id cache, so a column of references costs no
+    // more than indexes would and, unlike a dictionary, forgets devices with their rows
+    private final String[] deviceIds;
+    private final byte[] kinds;
+    private final long[] payloadStarts;
+    private final int[] payloadLengths;
+    private final BitSet expanded;
+
+    private final byte[] slab;
+    private long slabCursor;
+
+    private final long[] cacheSequence = new long[RENDER_CACHE_SIZE];
+    private final boolean[] cacheExpanded = new boolean[RENDER_CACHE_SIZE];
+    private final String[][] cacheLines = new String[RENDER_CACHE_SIZE][];
+
+    private long firstSeq;
+    private long nextSeq;
+    // Rows below this sequence have been announced to listeners
+    private long announcedSeq;
+    private int pendingAdded;
+    private int pendingRemoved;
+
+    public LogModel(int capacity, int slabBytes) {
+        this.capacity = capacity;
+        rows = new Row[capacity];
+        for (int i = 0; i < capacity; i++) rows[i] = new Row(i);
+        sequences = new long[capacity];
+        timestamps = new long[capacity];
+        xs = new double[capacity];
+        ys = new double[capacity];
+        rssis = new double[capacity];
+        deviceIds = new String[capacity];
+        kinds = new byte[capacity];
+        payloadStarts = new long[capacity];
+        payloadLengths = new int[capacity];
+        expanded = new BitSet(capacity);
+        slab = new byte[slabBytes];
+        Arrays.fill(cacheSequence, -1);
+    }
+
+    // Sized from LOG_CAPACITY rows and LOG_SLAB_BYTES of payload
+    public static LogModel fromSettings() {
+        int capacity = Settings.getInt("LOG_CAPACITY", 10_000);
+        return new LogModel(capacity, Settings.getInt("LOG_SLAB_BYTES", capacity * 128));
+    }
+
+    @Override
+    public int getSize() {
+        return (int) (nextSeq - firstSeq);
+    }
+
+    @Override
+    public Row getElementAt(int index) {
+        return rows[slotOf(firstSeq + index)];
+    }
+
+    public void appendReading(Reading r, long timestamp) {
+        int slot = claim(timestamp, KIND_READING);
+        xs[slot] = r.x;
+        ys[slot] = r.y;
+        rssis[slot] = r.rssi;
+        deviceIds[slot] = r.deviceId;
+        writePayload(slot, r.payload, r.payloadLength);
+    }
+
+    public void appendText(String msg, long timestamp) {
+        int slot = claim(timestamp, KIND_TEXT);
+        deviceIds[slot] = null;
+        byte[] bytes = msg.getBytes(StandardCharsets.UTF_8);
+        writePayload(slot, bytes, bytes.length);
+    }
+
+    // Fires the events for everything appended since the last call
+    public void endBatch() {
+        int removed = pendingRemoved;
+        int added = pendingAdded;
+        pendingRemoved = 0;
+        pendingAdded = 0;
+        announcedSeq = nextSeq;
+        if (removed > 0) fireIntervalRemoved(this, 0, removed - 1);
+        if (added > 0) fireIntervalAdded(this, getSize() - added, getSize() - 1);
+    }
+
+    public void toggleExpanded(int index) {
+        int slot = slotOf(firstSeq + index);
+        expanded.flip(slot);
+        fireContentsChanged(this, index, index);
+    }
+
+    public boolean isExpanded(Row row) {
+        return expanded.get(row.slot);
+    }
+
+    // Line count is derived from the columns alone, so layout never formats text
+    public int lineCount(Row row) {
+        if (kinds[row.slot] == KIND_TEXT || !expanded.get(row.slot)) return 1;
+        int chars = isBinary(row.slot) ? payloadLengths[row.slot] * 3 : payloadLengths[row.slot];
+        return 4 + Math.max(1, (chars + PAYLOAD_WRAP - 1) / PAYLOAD_WRAP);
+    }
+
+    public String[] lines(Row row) {
+        int slot = row.slot;
+        long seq = sequences[slot];
+        boolean isExpanded = expanded.get(slot);
+        int c = (int) (seq & (RENDER_CACHE_SIZE - 1));
+        if (cacheSequence[c] == seq && cacheExpanded[c] == isExpanded) return cacheLines[c];
+        String[] lines = format(slot, isExpanded);
+        cacheSequence[c] = seq;
+        cacheExpanded[c] = isExpanded;
+        cacheLines[c] = lines;
+        return lines;
+    }
+
+    private String[] format(int slot, boolean isExpanded) {
+        boolean binary = isBinary(slot);
+        String payload = binary ? payloadHex(slot) : payloadString(slot);
+        if (kinds[slot] == KIND_TEXT) return new String[]{payload};
+        String deviceId = deviceIds[slot];
+        if (!isExpanded) return new String[]{String.format("[%s] RSSI: %.2f", deviceId, rssis[slot])};
+        int jsonLines = Math.max(1, (payload.length() + PAYLOAD_WRAP - 1) / PAYLOAD_WRAP);
+        String[] lines = new String[4 + jsonLines];
+        lines[0] = "[" + deviceId + "]";
+        lines[1] = String.format("  RSSI: %.2f", rssis[slot]);
+        lines[2] = String.format("  (x=%.2f, y=%.2f)", xs[slot], ys[slot]);
+        lines[3] = "  Time: " + TIME_FORMAT.format(Instant.ofEpochMilli(timestamps[slot]));
+        for (int i = 0; i < jsonLines; i++) {
+            String part = payload.substring(Math.min(payload.length(), i * PAYLOAD_WRAP),
+                    Math.min(payload.length(), (i + 1) * PAYLOAD_WRAP));
+            lines[4 + i] = (i == 0 ? (binary ? "  BIN:  " : "  JSON: ") : "        ") + part;
+        }
+        return lines;
+    }
+
+    private int claim(long timestamp, byte kind) {
+        if (getSize() == capacity) {
+            if (firstSeq < announcedSeq) pendingRemoved++;
+            else pendingAdded--;
+            firstSeq++;
+        }
+        long seq = nextSeq++;
+        pendingAdded++;
+        int slot = slotOf(seq);
+        sequences[slot] = seq;
+        timestamps[slot] = timestamp;
+        kinds[slot] = kind;
+        expanded.clear(slot);
+        return slot;
+    }
+
+    private void writePayload(int slot, byte[] bytes, int len) {
+        len = Math.min(len, slab.length);
+        int at = (int) (slabCursor % slab.length);
+        int first = Math.min(len, slab.length - at);
+        System.arraycopy(bytes, 0, slab, at, first);
+        System.arraycopy(bytes, first, slab, 0, len - first);
+        payloadStarts[slot] = slabCursor;
+        payloadLengths[slot] = len;
+        slabCursor += len;
+    }
+
+    // Payload bytes may already have been overwritten by newer rows if the slab is undersized
+    private String payloadString(int slot) {
+        long start = payloadStarts[slot];
+        int len = payloadLengths[slot];
+        if (slabCursor - start > slab.length) return "(payload evicted)";
+        int at = (int) (start % slab.length);
+        if (at + len <= slab.length) return new String(slab, at, len, StandardCharsets.UTF_8);
+        byte[] joined = new byte[len];
+        int first = slab.length - at;
+        System.arraycopy(slab, at, joined, 0, first);
+        System.arraycopy(slab, 0, joined, first, len - first);
+        return new String(joined, StandardCharsets.UTF_8);
+    }
+
+    private boolean isBinary(int slot) {
+        return kinds[slot] == KIND_READING && payloadLengths[slot] > 0
+            && slabCursor - payloadStarts[slot] <= slab.length
+            && slab[(int) (payloadStarts[slot] % slab.length)] == ReadingEncoder.BINARY_V1;
+    }
+
+    private String payloadHex(int slot) {
+        long start = payloadStarts[slot];
+        int len = payloadLengths[slot];
+        StringBuilder sb = new StringBuilder(len * 3);
+        for (int i = 0; i < len; i++) {
+            int b = slab[(int) ((start + i) % slab.length)] & 0xFF;
+            sb.append(Character.forDigit(b >> 4, 16)).append(Character.forDigit(b & 0xF, 16)).append(' ');
+        }
+        return sb.toString();
+    }
+
+    private int slotOf(long seq) {
+        return (int) (seq % capacity);
+    }
+}
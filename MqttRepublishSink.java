@@ -0,0 +1,111 @@
+import org.eclipse.paho.client.mqttv3.*;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Re-publishes computed positions to an MQTT topic as
+//   {"gatewayId":"...","x":..,"y":..,"anchors":N,"version":V,"ts":<epoch millis>}
+// at most once per interval, over its own async connection at QoS 0, so a slow or
+// disconnected broker never holds up the aggregator thread (positions are simply skipped).
+// Paho only reconnects automatically after a first successful connect, so until then the
+// connect is retried here, backing off from 1s to 30s.
+public class MqttRepublishSink implements GatewaySink {
+    private static final long RETRY_MIN_MILLIS = 1_000, RETRY_MAX_MILLIS = 30_000;
+
+    private final MqttAsyncClient client;
+    private final MqttConnectOptions options = new MqttConnectOptions();
+    private final ScheduledExecutorService retries = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "republish-connect");
+        t.setDaemon(true);
+        return t;
+    });
+    private final String topic;
+    // Escaped once, ready to go between the quotes
+    private final String gatewayIdJson;
+    private final long intervalMillis;
+    private final StringBuilder json = new StringBuilder(128);
+    private long lastPublished;
+    private volatile boolean closed;
+
+    public MqttRepublishSink(String brokerUrl, String clientId, String topic, String gatewayId, long intervalMillis) throws MqttException {
+        this.topic = topic;
+        this.gatewayIdJson = escapeJson(gatewayId);
+        this.intervalMillis = intervalMillis;
+        client = new MqttAsyncClient(brokerUrl, clientId, new MemoryPersistence());
+        options.setAutomaticReconnect(true);
+        options.setCleanSession(true);
+        options.setConnectionTimeout(10);
+        connect(RETRY_MIN_MILLIS);
+    }
+
+    private void connect(long nextDelayMillis) {
+        if (closed) return;
+        try {
+            client.connect(options, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {}
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable ex) {
+                    retry(nextDelayMillis);
+                }
+            });
+        } catch (MqttException ex) {
+            retry(nextDelayMillis);
+        }
+    }
+
+    private void retry(long delayMillis) {
+        if (closed) return;
+        System.err.println("Republish connect to " + client.getServerURI() + " failed; retrying in " + delayMillis / 1000 + "s");
+        retries.schedule(() -> connect(Math.min(delayMillis * 2, RETRY_MAX_MILLIS)), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onReading(Reading reading) {
+        // Only positions are re-published
+    }
+
+    @Override
+    public void onSnapshot(PositionSnapshot snapshot) {
+        long now = System.currentTimeMillis();
+        if (!snapshot.hasEstimate() || now - lastPublished < intervalMillis || !client.isConnected()) return;
+        lastPublished = now;
+        json.setLength(0);
+        json.append("{\"gatewayId\":\"").append(gatewayIdJson)
+            .append("\",\"x\":").append(snapshot.estimateX)
+            .append(",\"y\":").append(snapshot.estimateY)
+            .append(",\"anchors\":").append(snapshot.size())
+            .append(",\"version\":").append(snapshot.version)
+            .append(",\"ts\":").append(now).append('}');
+        try {
+            client.publish(topic, json.toString().getBytes(StandardCharsets.UTF_8), 0, false);
+        } catch (MqttException ex) {
+            // In-flight window full or connection dropping; skip this position
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        retries.shutdownNow();
+        try {
+            if (client.isConnected()) client.disconnect().waitForCompletion(2000);
+            client.close();
+        } catch (MqttException ignored) {}
+    }
+
+    private static String escapeJson(String s) {
+        StringBuilder out = new StringBuilder(s.length() + 8);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') out.append('\\').append(c);
+            else if (c < 0x20) out.append(String.format("\\u%04x", (int) c));
+            else out.append(c);
+        }
+        return out.toString();
+    }
+}
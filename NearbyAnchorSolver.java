@@ -0,0 +1,72 @@
+import java.util.function.IntConsumer;
+
+// Solves over a bounded neighbourhood instead of every anchor: the k strongest anchors (shortest
+// RSSI distance) within radius of the previous estimate, found through the AnchorSet's spatial
+// grid, are copied into a small working set for the inner solver. The cost per solve then
+// depends on k and the local anchor density, not on the size of the deployment. Without a
+// previous estimate, a grid, or three anchors in range it solves over the full set, which is
+// also how it recovers after the receiver jumps.
+public class NearbyAnchorSolver implements PositionSolver, IntConsumer {
+    private final PositionSolver inner;
+    private final int k;
+    private final double radius;
+
+    private final AnchorSet local = new AnchorSet();
+    // Candidates found so far, strongest first
+    private final int[] picked;
+    private int pickedCount;
+    private AnchorSet querying;
+
+    private boolean hasLast;
+    private double lastX, lastY;
+
+    public NearbyAnchorSolver(PositionSolver inner, int k, double radius) {
+        this.inner = inner;
+        this.k = Math.max(3, k);
+        this.radius = radius;
+        picked = new int[this.k];
+    }
+
+    @Override
+    public boolean solve(AnchorSet anchors, double[] out) {
+        SpatialGrid grid = anchors.grid();
+        boolean ok;
+        if (hasLast && grid != null && pickNearby(anchors, grid) >= 3) {
+            local.clear();
+            for (int i = 0; i < pickedCount; i++) {
+                int s = picked[i];
+                local.update(i, anchors.x(s), anchors.y(s), anchors.distance(s));
+            }
+            ok = inner.solve(local, out);
+        } else {
+            ok = inner.solve(anchors, out);
+        }
+        hasLast = ok;
+        if (ok) {
+            lastX = out[0];
+            lastY = out[1];
+        }
+        return ok;
+    }
+
+    private int pickNearby(AnchorSet anchors, SpatialGrid grid) {
+        querying = anchors;
+        pickedCount = 0;
+        grid.queryRadius(lastX, lastY, radius, this);
+        querying = null;
+        return pickedCount;
+    }
+
+    // Grid visitor: insertion into the strongest-k list by weight
+    @Override
+    public void accept(int slot) {
+        double w = querying.weight(slot);
+        int at = pickedCount;
+        while (at > 0 && querying.weight(picked[at - 1]) < w) at--;
+        if (at >= k) return;
+        int end = Math.min(pickedCount, k - 1);
+        System.arraycopy(picked, at, picked, at + 1, end - at);
+        picked[at] = slot;
+        if (pickedCount < k) pickedCount++;
+    }
+}
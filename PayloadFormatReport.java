@@ -0,0 +1,72 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+// Compares the JSON and binary reading formats: payload size, size of the whole MQTT PUBLISH
+// packet on the wire, and decode cost through ReadingDecoder.
+//
+//   java -cp .:lib/paho-mqtt-client.jar PayloadFormatReport [samples] [rounds]
+public class PayloadFormatReport {
+    private static final String TOPIC = "sensor/data";
+
+    public static void main(String[] args) {
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        Random random = new Random(42);
+        byte[][] json = new byte[samples][];
+        byte[][] binary = new byte[samples][];
+        ReadingEncoder encoder = new ReadingEncoder();
+        for (int i = 0; i < samples; i++) {
+            // A few hundred devices with ids shaped like the publisher's
+            byte[] id = ("SwingPublisher-" + Integer.toHexString(0x10000000 + random.nextInt(300))).getBytes(StandardCharsets.UTF_8);
+            double x = -50 + random.nextDouble() * 100;
+            double y = -50 + random.nextDouble() * 100;
+            double rssi = -60 + (random.nextDouble() - 0.5);
+            long sentAt = System.currentTimeMillis();
+            encoder.encodeJson(id, x, y, rssi, sentAt, i + 1);
+            json[i] = encoder.toByteArray();
+            encoder.encodeBinary(id, x, y, rssi, sentAt, i + 1);
+            binary[i] = encoder.toByteArray();
+        }
+
+        System.out.printf("%d sample readings, %d decode rounds%n%n", samples, rounds);
+        System.out.printf("%-8s %14s %14s %16s %12s%n", "format", "payload bytes", "wire bytes", "decode ns/msg", "msgs/s");
+        report("json", json, rounds);
+        report("binary", binary, rounds);
+    }
+
+    private static void report(String name, byte[][] payloads, int rounds) {
+        long payloadBytes = 0, wireBytes = 0;
+        for (byte[] p : payloads) {
+            payloadBytes += p.length;
+            wireBytes += publishPacketSize(p.length);
+        }
+        ReadingDecoder decoder = new ReadingDecoder();
+        Reading reading = new Reading();
+        long checksum = 0;
+        // Warm up so the JIT has compiled the decode path before timing
+        for (int r = 0; r < Math.max(1, rounds / 4); r++) {
+            for (byte[] p : payloads) checksum += decoder.decode(p, reading);
+        }
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (byte[] p : payloads) {
+                checksum += decoder.decode(p, reading);
+                checksum += (long) reading.rssi;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        double nsPerMsg = (double) elapsed / ((long) rounds * payloads.length);
+        System.out.printf("%-8s %14.1f %14.1f %16.1f %12.0f%n", name,
+                (double) payloadBytes / payloads.length, (double) wireBytes / payloads.length,
+                nsPerMsg, 1e9 / nsPerMsg);
+        if (checksum == 42) System.out.println(); // keep the decode loop observable
+    }
+
+    // MQTT 3.1.1 PUBLISH at QoS 1: fixed header + remaining length + topic + packet id + payload
+    private static int publishPacketSize(int payloadLength) {
+        int remaining = 2 + TOPIC.length() + 2 + payloadLength;
+        int lengthBytes = remaining < 128 ? 1 : remaining < 16_384 ? 2 : remaining < 2_097_152 ? 3 : 4;
+        return 1 + lengthBytes + remaining;
+    }
+}
@@ -0,0 +1,711 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// On-disk history of position estimates, tag fixes and (optionally) raw readings, for queries
+// like "where was tag X between t1 and t2" and for scrubbing back in the subscriber window.
+// A history is a directory of fixed-width records in time-partitioned files:
+//
+//   ids.txt                 every device/tag id, one per line; records refer to them by line number
+//   history-<start>.dat     header: "MQTTHST1", i64 partition start (epoch millis), i32 record size
+//                           records from offset 32, RECORD_BYTES each: i64 time (epoch millis),
+//                           i32 id, i32 tag id (-1 if none), u8 kind, u8 anchors, u16 0,
+//                           f32 x, f32 y, f32 rssi, f32 distance (NaN where not applicable)
+//   history-<start>.idx     every INDEX_EVERY-th record of the partition: i64 time, i32 record number
+//
+// Times never decrease within a history (the writer clamps the odd out-of-order record to its
+// predecessor), so a query binary-searches the sparse index and reads only the records in range.
+// All integers are big-endian.
+public final class PositionHistory {
+    // Record kinds: the receiver's position estimate (id RECEIVER), a tag fix, a raw reading
+    public static final int POSITION = 0, TAG = 1, READING = 2;
+    public static final String RECEIVER = "receiver";
+
+    static final byte[] MAGIC = "MQTTHST1".getBytes(StandardCharsets.US_ASCII);
+    static final int HEADER_BYTES = 32;
+    static final int RECORD_BYTES = 8 + 4 + 4 + 1 + 1 + 2 + 4 * 4;
+    static final int INDEX_EVERY = 256;
+    static final int INDEX_ENTRY_BYTES = 8 + 4;
+    static final String IDS_FILE = "ids.txt";
+
+    private PositionHistory() {}
+
+    static Path partitionPath(Path dir, long start) {
+        return dir.resolve(String.format("history-%013d.dat", start));
+    }
+
+    static Path indexPath(Path dir, long start) {
+        return dir.resolve(String.format("history-%013d.idx", start));
+    }
+
+    // Partition start times in the directory, ascending
+    static long[] partitions(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return new long[0];
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.startsWith("history-") && n.endsWith(".dat"))
+                    .mapToLong(n -> Long.parseLong(n.substring("history-".length(), n.length() - ".dat".length())))
+                    .sorted().toArray();
+        }
+    }
+
+    static long recordCount(FileChannel channel) throws IOException {
+        return Math.max(0, (channel.size() - HEADER_BYTES) / RECORD_BYTES);
+    }
+
+    // A GatewaySink that appends to a history without ever blocking the engine: records are
+    // encoded into an in-memory buffer under a short lock, and a background thread swaps it for
+    // an empty one every flushMillis (or once it is half full) and writes it out in one go. If
+    // the disk falls behind and the buffer fills, records are dropped and counted.
+    public static final class Writer implements GatewaySink, Closeable {
+        private static final long EXPIRY_CHECK_MILLIS = 60_000;
+
+        private final Path dir;
+        private final long partitionMillis;
+        private final long retentionMillis;
+        private final long flushMillis;
+        private final boolean includeReadings;
+        private final Thread thread;
+
+        // Guarded by this
+        private ByteBuffer pending;
+        private ByteBuffer spare;
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> newIds = new ArrayList<>();
+        private long dropped;
+        private boolean closed;
+        private boolean failed;
+
+        // Writer thread only
+        private final BufferedWriter idsOut;
+        private final ByteBuffer indexEntries = ByteBuffer.allocate(INDEX_ENTRY_BYTES * 64);
+        private long partitionStart = Long.MIN_VALUE;
+        private FileChannel data;
+        private FileChannel index;
+        private long partitionRecords;
+        private long lastTime = Long.MIN_VALUE;
+        private long nextExpiryCheck;
+        private volatile long written;
+
+        // Appends to dir (created if needed), continuing any history already there; partitions
+        // older than retentionMillis are deleted as new ones start, and by a check every
+        // EXPIRY_CHECK_MILLIS on the writer thread (0 keeps everything)
+        public Writer(Path dir, long partitionMillis, long retentionMillis, int bufferRecords, long flushMillis,
+                      boolean includeReadings) throws IOException {
+            this.dir = dir;
+            this.partitionMillis = Math.max(1000, partitionMillis);
+            this.retentionMillis = retentionMillis;
+            this.flushMillis = Math.max(1, flushMillis);
+            this.includeReadings = includeReadings;
+            Files.createDirectories(dir);
+            Path idsPath = dir.resolve(IDS_FILE);
+            if (Files.exists(idsPath)) {
+                for (String id : Files.readAllLines(idsPath, StandardCharsets.UTF_8)) ids.put(id, ids.size());
+            }
+            idsOut = Files.newBufferedWriter(idsPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            long[] existing = partitions(dir);
+            if (existing.length > 0) openPartition(existing[existing.length - 1]);
+            int capacity = Math.max(64, bufferRecords) * RECORD_BYTES;
+            pending = ByteBuffer.allocate(capacity);
+            spare = ByteBuffer.allocate(capacity);
+            thread = new Thread(this::writeLoop, "history-writer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        // Writes to HISTORY_DIR (null if unset) in HISTORY_PARTITION_MINUTES partitions (default
+        // 60), keeping HISTORY_RETENTION_HOURS (default 0: all); readings too unless
+        // HISTORY_READINGS=false. HISTORY_BUFFER_RECORDS (65536) and HISTORY_FLUSH_MS (250) size
+        // the write-behind buffer.
+        public static Writer fromSettings() throws IOException {
+            String dir = Settings.getString("HISTORY_DIR", null);
+            if (dir == null) return null;
+            return fromSettings(Path.of(dir), Settings.getBoolean("HISTORY_READINGS", true));
+        }
+
+        public static Writer fromSettings(Path dir, boolean includeReadings) throws IOException {
+            return new Writer(dir,
+                Settings.getLong("HISTORY_PARTITION_MINUTES", 60) * 60_000,
+                Settings.getLong("HISTORY_RETENTION_HOURS", 0) * 3_600_000,
+                Settings.getInt("HISTORY_BUFFER_RECORDS", 65536),
+                Settings.getLong("HISTORY_FLUSH_MS", 250),
+                includeReadings);
+        }
+
+        public Path dir() {
+            return dir;
+        }
+
+        @Override
+        public void onReading(Reading r) {
+            if (!includeReadings) return;
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                if (!hasRoom(1)) return;
+                put(now, r.deviceId, r.tagId, READING, 0, r.x, r.y, r.rssi, r.distance);
+            }
+        }
+
+        @Override
+        public void onSnapshot(PositionSnapshot snapshot) {
+            if (!snapshot.hasEstimate()) return;
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                if (!hasRoom(1)) return;
+                put(now, RECEIVER, null, POSITION, snapshot.size(), snapshot.estimateX, snapshot.estimateY, Double.NaN, Double.NaN);
+            }
+        }
+
+        // Tags whose fix this tick recomputed
+        @Override
+        public void onTags(TagSnapshot tags) {
+            long now = System.currentTimeMillis();
+            int updated = 0;
+            for (int i = 0; i < tags.size(); i++) {
+                if (tags.updated[i]) updated++;
+            }
+            if (updated == 0) return;
+            synchronized (this) {
+                if (!hasRoom(updated)) return;
+                for (int i = 0; i < tags.size(); i++) {
+                    if (tags.updated[i]) put(now, tags.tagIds[i], null, TAG, tags.anchors[i], tags.xs[i], tags.ys[i], Double.NaN, Double.NaN);
+                }
+            }
+        }
+
+        // Records lost because the buffer was full or writing failed
+        public synchronized long dropped() {
+            return dropped;
+        }
+
+        // Records on disk so far (by this writer)
+        public long written() {
+            return written;
+        }
+
+        // Flushes what is buffered and stops the writer thread
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+                notifyAll();
+            }
+            try {
+                thread.join(10_000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Callers hold the lock
+        private boolean hasRoom(int records) {
+            if (closed || failed) return false;
+            if (pending.remaining() < records * RECORD_BYTES) {
+                dropped += records;
+                return false;
+            }
+            return true;
+        }
+
+        private void put(long time, String id, String tagId, int kind, int anchors, double x, double y,
+                         double rssi, double distance) {
+            pending.putLong(time)
+                .putInt(idOf(id))
+                .putInt(tagId != null ? idOf(tagId) : -1)
+                .put((byte) kind)
+                .put((byte) Math.min(anchors, 255))
+                .putShort((short) 0)
+                .putFloat((float) x)
+                .putFloat((float) y)
+                .putFloat((float) rssi)
+                .putFloat((float) distance);
+            if (pending.position() >= pending.capacity() / 2) notifyAll();
+        }
+
+        private int idOf(String id) {
+            Integer known = ids.get(id);
+            if (known != null) return known;
+            int next = ids.size();
+            ids.put(id, next);
+            newIds.add(id);
+            return next;
+        }
+
+        private void writeLoop() {
+            List<String> names = new ArrayList<>();
+            while (true) {
+                ByteBuffer batch;
+                boolean last;
+                synchronized (this) {
+                    if (!closed && pending.position() < pending.capacity() / 2) {
+                        try {
+                            wait(flushMillis);
+                        } catch (InterruptedException ex) {
+                            closed = true;
+                        }
+                    }
+                    batch = pending;
+                    pending = spare;
+                    spare = batch;
+                    names.addAll(newIds);
+                    newIds.clear();
+                    last = closed;
+                }
+                if (!failed) {
+                    try {
+                        // Ids first, so no record on disk refers to an unknown one
+                        if (!names.isEmpty()) {
+                            for (String name : names) {
+                                idsOut.write(name);
+                                idsOut.newLine();
+                            }
+                            idsOut.flush();
+                        }
+                        write(batch);
+                        expireIfDue();
+                    } catch (IOException ex) {
+                        // Keep the gateway running; report once and stop writing
+                        System.err.println("PositionHistory disabled: " + ex.getMessage());
+                        synchronized (this) {
+                            failed = true;
+                            dropped += batch.position() / RECORD_BYTES;
+                        }
+                    }
+                }
+                names.clear();
+                batch.clear();
+                if (last) break;
+            }
+            try {
+                idsOut.close();
+                closePartition();
+            } catch (IOException ignored) {}
+        }
+
+        // Clamps times to be non-decreasing, splits the batch at partition boundaries and
+        // writes each run with one channel write, followed by its index entries
+        private void write(ByteBuffer batch) throws IOException {
+            int end = batch.position();
+            int runStart = 0;
+            indexEntries.clear();
+            for (int pos = 0; pos < end; pos += RECORD_BYTES) {
+                long time = Math.max(batch.getLong(pos), lastTime);
+                batch.putLong(pos, time);
+                if (data == null || time >= partitionStart + partitionMillis) {
+                    writeRun(batch, runStart, pos);
+                    runStart = pos;
+                    openPartition(time - Math.floorMod(time, partitionMillis));
+                }
+                if (partitionRecords % INDEX_EVERY == 0) {
+                    if (!indexEntries.hasRemaining()) {
+                        writeRun(batch, runStart, pos);
+                        runStart = pos;
+                    }
+                    indexEntries.putLong(time).putInt((int) partitionRecords);
+                }
+                partitionRecords++;
+                lastTime = time;
+            }
+            writeRun(batch, runStart, end);
+        }
+
+        private void writeRun(ByteBuffer batch, int from, int to) throws IOException {
+            if (to > from) {
+                ByteBuffer run = batch.duplicate();
+                run.limit(to).position(from);
+                while (run.hasRemaining()) data.write(run);
+                written += (to - from) / RECORD_BYTES;
+            }
+            indexEntries.flip();
+            while (indexEntries.hasRemaining()) index.write(indexEntries);
+            indexEntries.clear();
+        }
+
+        // Continues the partition if it already exists (after a restart), otherwise starts it
+        private void openPartition(long start) throws IOException {
+            closePartition();
+            partitionStart = start;
+            Path path = partitionPath(dir, start);
+            boolean exists = Files.exists(path);
+            data = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index = FileChannel.open(indexPath(dir, start), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (exists && data.size() >= HEADER_BYTES) {
+                partitionRecords = recordCount(data);
+                // Drop a partial record left by a crash, and index entries past the data
+                data.truncate(HEADER_BYTES + partitionRecords * RECORD_BYTES);
+                index.truncate(((partitionRecords + INDEX_EVERY - 1) / INDEX_EVERY) * INDEX_ENTRY_BYTES);
+                if (partitionRecords > 0) {
+                    ByteBuffer time = ByteBuffer.allocate(8);
+                    data.read(time, HEADER_BYTES + (partitionRecords - 1) * RECORD_BYTES);
+                    lastTime = Math.max(lastTime, time.flip().getLong());
+                }
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.put(MAGIC).putLong(start).putInt(RECORD_BYTES).clear();
+                data.truncate(0);
+                data.write(header, 0);
+                index.truncate(0);
+                partitionRecords = 0;
+                deleteExpired(start);
+            }
+            data.position(data.size());
+            index.position(index.size());
+        }
+
+        private void closePartition() throws IOException {
+            if (data == null) return;
+            data.close();
+            index.close();
+            data = null;
+        }
+
+        // A restarted gateway continues its newest partition, and one partition may outlast the
+        // retention, so starting partitions alone would not expire the old ones in time
+        private void expireIfDue() throws IOException {
+            long now = System.currentTimeMillis();
+            if (retentionMillis <= 0 || now < nextExpiryCheck) return;
+            nextExpiryCheck = now + EXPIRY_CHECK_MILLIS;
+            deleteExpired(now);
+        }
+
+        private void deleteExpired(long newest) throws IOException {
+            if (retentionMillis <= 0) return;
+            for (long start : partitions(dir)) {
+                // Never the partition being written
+                if (start + partitionMillis > newest - retentionMillis || start == partitionStart) break;
+                Files.deleteIfExists(partitionPath(dir, start));
+                Files.deleteIfExists(indexPath(dir, start));
+            }
+        }
+    }
+
+    // One record, as passed to query visitors; reused between calls, so copy what you keep
+    public static final class Record {
+        public long millis;
+        public int kind;
+        public String id;
+        // The tag a reading was about; null otherwise
+        public String tagId;
+        public int anchors;
+        public double x, y, rssi, distance;
+    }
+
+    // Positions of one id over time, in time order
+    public static final class Track {
+        public final String id;
+        public long[] millis = new long[64];
+        public double[] xs = new double[64], ys = new double[64];
+        public int size;
+
+        Track(String id) {
+            this.id = id;
+        }
+
+        void add(long t, double x, double y) {
+            if (size == millis.length) {
+                millis = Arrays.copyOf(millis, size * 2);
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+            }
+            millis[size] = t;
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+        }
+    }
+
+    // What the map showed at a point in time: the latest estimate, anchor and tag positions
+    // recorded within a window before it
+    public static final class Frame {
+        public final long millis;
+        public final PositionSnapshot anchors;
+        public final TagSnapshot tags;
+
+        Frame(long millis, PositionSnapshot anchors, TagSnapshot tags) {
+            this.millis = millis;
+            this.anchors = anchors;
+            this.tags = tags;
+        }
+    }
+
+    private static final class SparseIndex {
+        final long fileSize;
+        final long[] times;
+        final int[] records;
+
+        SparseIndex(long fileSize) {
+            this.fileSize = fileSize;
+            times = new long[(int) (fileSize / INDEX_ENTRY_BYTES)];
+            records = new int[times.length];
+        }
+    }
+
+    // Queries a history, including one that is being written. Reads go straight to the files
+    // (only the records in range and the sparse index are read), so memory use does not grow
+    // with the size of the history. Not thread-safe.
+    public static final class Reader {
+        private final Path dir;
+        private final List<String> ids = new ArrayList<>();
+        private final Map<String, Integer> idIndex = new HashMap<>();
+        private final Map<Long, SparseIndex> indexes = new HashMap<>();
+        private final ByteBuffer chunk = ByteBuffer.allocate(RECORD_BYTES * 4096);
+        private final Record record = new Record();
+
+        public Reader(Path dir) throws IOException {
+            if (!Files.isDirectory(dir)) throw new IOException("No history in " + dir);
+            this.dir = dir;
+        }
+
+        // Time of the first and last record, or -1 if there are none
+        public long firstMillis() throws IOException {
+            for (long start : partitions(dir)) {
+                long t = recordTime(start, 0);
+                if (t >= 0) return t;
+            }
+            return -1;
+        }
+
+        public long lastMillis() throws IOException {
+            long[] starts = partitions(dir);
+            for (int i = starts.length - 1; i >= 0; i--) {
+                long t = recordTime(starts[i], -1);
+                if (t >= 0) return t;
+            }
+            return -1;
+        }
+
+        // Visits every record of the given kinds (bit mask of 1 << kind) recorded between
+        // fromMillis and toMillis inclusive, for one id (null: all), in time order; returns the
+        // number visited
+        public long scan(String id, long fromMillis, long toMillis, int kinds, Consumer<Record> visitor) throws IOException {
+            int wanted = -1;
+            if (id != null && (wanted = idOf(id)) < 0) return 0;
+            long[] starts = partitions(dir);
+            long visited = 0;
+            for (int p = 0; p < starts.length; p++) {
+                if (starts[p] > toMillis) break;
+                if (p + 1 < starts.length && starts[p + 1] <= fromMillis) continue;
+                try (FileChannel channel = FileChannel.open(partitionPath(dir, starts[p]), StandardOpenOption.READ)) {
+                    long count = recordCount(channel);
+                    long next = firstCandidate(starts[p], fromMillis);
+                    while (next < count) {
+                        chunk.clear();
+                        chunk.limit((int) Math.min(chunk.capacity(), (count - next) * RECORD_BYTES));
+                        long position = HEADER_BYTES + next * RECORD_BYTES;
+                        while (chunk.hasRemaining() && channel.read(chunk, position + chunk.position()) > 0) {}
+                        int records = chunk.position() / RECORD_BYTES;
+                        if (records == 0) break;
+                        for (int i = 0; i < records; i++) {
+                            int base = i * RECORD_BYTES;
+                            long t = chunk.getLong(base);
+                            if (t > toMillis) return visited;
+                            if (t < fromMillis) continue;
+                            int kind = chunk.get(base + 16);
+                            if ((kinds & (1 << kind)) == 0) continue;
+                            int rid = chunk.getInt(base + 8);
+                            if (wanted >= 0 && rid != wanted) continue;
+                            int tag = chunk.getInt(base + 12);
+                            record.millis = t;
+                            record.kind = kind;
+                            record.id = name(rid);
+                            record.tagId = tag >= 0 ? name(tag) : null;
+                            record.anchors = chunk.get(base + 17) & 0xFF;
+                            record.x = chunk.getFloat(base + 20);
+                            record.y = chunk.getFloat(base + 24);
+                            record.rssi = chunk.getFloat(base + 28);
+                            record.distance = chunk.getFloat(base + 32);
+                            visitor.accept(record);
+                            visited++;
+                        }
+                        next += records;
+                    }
+                }
+            }
+            return visited;
+        }
+
+        // Positions of a tag (or of the receiver, id RECEIVER) between two times
+        public Track positions(String id, long fromMillis, long toMillis) throws IOException {
+            Track track = new Track(id);
+            scan(id, fromMillis, toMillis, (1 << POSITION) | (1 << TAG), r -> track.add(r.millis, r.x, r.y));
+            return track;
+        }
+
+        // The latest estimate, and the latest position of every anchor (untagged readings) and
+        // tag recorded within windowMillis up to atMillis
+        public Frame frameAt(long atMillis, long windowMillis) throws IOException {
+            Map<String, double[]> anchors = new LinkedHashMap<>();
+            Map<String, double[]> tags = new LinkedHashMap<>();
+            double[] estimate = {Double.NaN, Double.NaN};
+            scan(null, atMillis - windowMillis, atMillis, -1, r -> {
+                if (r.kind == POSITION) {
+                    estimate[0] = r.x;
+                    estimate[1] = r.y;
+                } else if (r.kind == TAG) {
+                    tags.put(r.id, new double[]{r.x, r.y, r.anchors});
+                } else if (r.tagId == null) {
+                    anchors.put(r.id, new double[]{r.x, r.y, r.distance});
+                }
+            });
+            int n = anchors.size();
+            String[] deviceIds = anchors.keySet().toArray(new String[0]);
+            String[] labels = new String[n];
+            double[] xs = new double[n], ys = new double[n], distances = new double[n];
+            for (int i = 0; i < n; i++) {
+                double[] a = anchors.get(deviceIds[i]);
+                labels[i] = PositionSnapshot.labelFor(deviceIds[i]);
+                xs[i] = a[0];
+                ys[i] = a[1];
+                distances[i] = a[2];
+            }
+            int m = tags.size();
+            String[] tagIds = tags.keySet().toArray(new String[0]);
+            double[] txs = new double[m], tys = new double[m];
+            int[] fixAnchors = new int[m];
+            for (int i = 0; i < m; i++) {
+                double[] t = tags.get(tagIds[i]);
+                txs[i] = t[0];
+                tys[i] = t[1];
+                fixAnchors[i] = (int) t[2];
+            }
+            return new Frame(atMillis,
+                new PositionSnapshot(atMillis, deviceIds, labels, xs, ys, distances, estimate[0], estimate[1]),
+                new TagSnapshot(atMillis, tagIds, txs, tys, fixAnchors, new boolean[m], 0, 0));
+        }
+
+        // First record that can be at or after fromMillis, from the sparse index
+        private long firstCandidate(long start, long fromMillis) throws IOException {
+            SparseIndex index = index(start);
+            int lo = 0, hi = index.times.length - 1, found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                // Strictly before: records up to the entry can't be at fromMillis or later
+                if (index.times[mid] < fromMillis) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found < 0 ? 0 : index.records[found];
+        }
+
+        // Reread only when the file has grown, i.e. for the partition being written
+        private SparseIndex index(long start) throws IOException {
+            Path path = indexPath(dir, start);
+            long size = Files.exists(path) ? Files.size(path) : 0;
+            SparseIndex cached = indexes.get(start);
+            if (cached != null && cached.fileSize == size) return cached;
+            SparseIndex index = new SparseIndex(size);
+            if (size > 0) {
+                ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+                for (int i = 0; i < index.times.length && bytes.remaining() >= INDEX_ENTRY_BYTES; i++) {
+                    index.times[i] = bytes.getLong();
+                    index.records[i] = bytes.getInt();
+                }
+            }
+            indexes.put(start, index);
+            return index;
+        }
+
+        // Time of record n of a partition (-1: the last), or -1 if there is no such record
+        private long recordTime(long start, long n) throws IOException {
+            try (FileChannel channel = FileChannel.open(partitionPath(dir, start), StandardOpenOption.READ)) {
+                long count = recordCount(channel);
+                if (n < 0) n = count - 1;
+                if (n < 0 || n >= count) return -1;
+                ByteBuffer time = ByteBuffer.allocate(8);
+                channel.read(time, HEADER_BYTES + n * RECORD_BYTES);
+                return time.position() == 8 ? time.flip().getLong() : -1;
+            }
+        }
+
+        private int idOf(String id) throws IOException {
+            Integer known = idIndex.get(id);
+            if (known == null) {
+                reloadIds();
+                known = idIndex.get(id);
+            }
+            return known != null ? known : -1;
+        }
+
+        private String name(int id) throws IOException {
+            if (id >= ids.size()) reloadIds();
+            return id < ids.size() ? ids.get(id) : "#" + id;
+        }
+
+        // The writer appends ids before the records that use them
+        private void reloadIds() throws IOException {
+            Path path = dir.resolve(IDS_FILE);
+            if (!Files.exists(path)) return;
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            for (int i = ids.size(); i < lines.size(); i++) {
+                ids.add(lines.get(i));
+                idIndex.put(lines.get(i), i);
+            }
+        }
+    }
+
+    // Prints the positions of an id over a time range as CSV, at the float precision they are
+    // stored with. Without --id it prints the receiver's positions:
+    //
+    //   java -cp . PositionHistory --dir=history --id=Tag-7 --from=2024-05-01T10:00:00Z --to=2024-05-01T10:05:00Z
+    //
+    // --from/--to take ISO-8601 instants or epoch millis (default: the whole history); --last=<s>
+    // selects the last s seconds instead; --readings=true prints that device's raw readings.
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = Settings.parseArgs(args);
+        Reader reader = new Reader(Path.of(Settings.option(options, "HISTORY_", "dir", "history")));
+        String id = Settings.option(options, "HISTORY_", "id", RECEIVER);
+        long to = time(Settings.option(options, "HISTORY_", "to", null), Long.MAX_VALUE);
+        long from = time(Settings.option(options, "HISTORY_", "from", null), Long.MIN_VALUE);
+        String last = Settings.option(options, "HISTORY_", "last", null);
+        if (last != null) {
+            to = reader.lastMillis();
+            from = to - (long) (Double.parseDouble(last) * 1000);
+        }
+        StringBuilder line = new StringBuilder(96);
+        long started = System.nanoTime();
+        long count;
+        if (Boolean.parseBoolean(Settings.option(options, "HISTORY_", "readings", "false"))) {
+            System.out.println("time,deviceId,x,y,rssi,distance,tagId");
+            count = reader.scan(id, from, to, 1 << READING, r -> {
+                line.setLength(0);
+                line.append(Instant.ofEpochMilli(r.millis)).append(',').append(r.id).append(',').append((float) r.x)
+                    .append(',').append((float) r.y).append(',').append((float) r.rssi).append(',').append((float) r.distance)
+                    .append(',').append(r.tagId != null ? r.tagId : "");
+                System.out.println(line);
+            });
+        } else {
+            System.out.println("time,id,x,y,anchors");
+            count = reader.scan(id, from, to, (1 << POSITION) | (1 << TAG), r -> {
+                line.setLength(0);
+                line.append(Instant.ofEpochMilli(r.millis)).append(',').append(r.id).append(',').append((float) r.x)
+                    .append(',').append((float) r.y).append(',').append(r.anchors);
+                System.out.println(line);
+            });
+        }
+        System.err.printf("%d records in %.1f ms%n", count, (System.nanoTime() - started) / 1e6);
+    }
+
+    private static long time(String value, long def) {
+        if (value == null) return def;
+        return value.chars().allMatch(Character::isDigit) ? Long.parseLong(value) : Instant.parse(value).toEpochMilli();
+    }
+}
@@ -0,0 +1,41 @@
+// Immutable view of the device anchors and the position estimate, produced once per processed
+// batch and swapped in atomically (volatile reference), so renderers never see partial updates
+// and never run the solver themselves. Arrays are owned by the snapshot; never modify them.
+public final class PositionSnapshot {
+    public static final PositionSnapshot EMPTY =
+        new PositionSnapshot(0, new String[0], new String[0], new double[0], new double[0], new double[0], Double.NaN, Double.NaN);
+
+    public final long version;
+    public final String[] deviceIds;
+    // Short device labels for drawing (suffix after the last '-')
+    public final String[] labels;
+    public final double[] xs, ys, distances;
+    public final double estimateX, estimateY;
+
+    public PositionSnapshot(long version, String[] deviceIds, String[] labels,
+                            double[] xs, double[] ys, double[] distances,
+                            double estimateX, double estimateY) {
+        this.version = version;
+        this.deviceIds = deviceIds;
+        this.labels = labels;
+        this.xs = xs;
+        this.ys = ys;
+        this.distances = distances;
+        this.estimateX = estimateX;
+        this.estimateY = estimateY;
+    }
+
+    public int size() {
+        return deviceIds.length;
+    }
+
+    public boolean hasEstimate() {
+        return !Double.isNaN(estimateX) && !Double.isNaN(estimateY);
+    }
+
+    // Show only the suffix (after last '-') as the label
+    public static String labelFor(String id) {
+        int dashIdx = id.lastIndexOf('-');
+        return (dashIdx >= 0 && dashIdx < id.length() - 1) ? id.substring(dashIdx + 1) : id;
+    }
+}
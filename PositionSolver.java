@@ -0,0 +1,23 @@
+// Estimates a 2D receiver position from the anchors' coordinates and RSSI-derived distances
+
+public interface PositionSolver {
+    // Writes the estimate into out[0..1]; returns false (with NaN written) when there is no fix
+    boolean solve(AnchorSet anchors, double[] out);
+
+    // Picked with POSITION_SOLVER (least-squares|trilateration) and SOLVER_REFINE_ITERATIONS;
+    // SOLVER_NEAREST_K > 0 restricts it to that many anchors within SOLVER_RADIUS of the last fix
+    static PositionSolver fromSettings() {
+        PositionSolver solver = statelessFromSettings();
+        int nearest = Settings.getInt("SOLVER_NEAREST_K", 0);
+        if (nearest > 0) solver = new NearbyAnchorSolver(solver, nearest, Settings.getDouble("SOLVER_RADIUS", 100));
+        return solver;
+    }
+
+    // POSITION_SOLVER alone: keeps no estimate between solves, so one can serve many receivers
+    static PositionSolver statelessFromSettings() {
+        String name = Settings.getString("POSITION_SOLVER", "least-squares");
+        return name.equalsIgnoreCase("trilateration")
+            ? new TrilaterationSolver()
+            : new LeastSquaresSolver(Settings.getInt("SOLVER_REFINE_ITERATIONS", 3));
+    }
+}
@@ -0,0 +1,58 @@
+// Mutable RSSI reading filled in place by ReadingDecoder, so the ingest path can reuse one instance per thread
+
+public class Reading {
+    public String deviceId;
+    // Tag the anchor heard (multi-tag deployments); null when the receiver is the subscriber itself
+    public String tagId;
+    public double x, y, rssi;
+    // Publisher clock when the reading was sent (epoch millis), 0 if the payload did not carry it
+    public long sentAtMillis;
+    // Publisher's per-device counter (from 1), 0 if absent; gaps mean lost readings
+    public long sequence;
+    // Gateway clock (nanoTime) when the message arrived and when this reading was decoded
+    public long receivedAtNanos, decodedAtNanos;
+    // Distance derived from rssi by the gateway; not part of the payload
+    public double distance;
+
+    // Copy of the raw payload; the buffer is kept and regrown only when a larger payload arrives
+    public byte[] payload = new byte[128];
+    public int payloadLength;
+
+    public void reset() {
+        deviceId = null;
+        tagId = null;
+        x = Double.NaN;
+        y = Double.NaN;
+        rssi = Double.NaN;
+        sentAtMillis = 0;
+        sequence = 0;
+        receivedAtNanos = 0;
+        decodedAtNanos = 0;
+        distance = Double.NaN;
+    }
+
+    public void setPayload(byte[] buf, int off, int len) {
+        if (payload.length < len) payload = new byte[Math.max(len, payload.length * 2)];
+        System.arraycopy(buf, off, payload, 0, len);
+        payloadLength = len;
+    }
+
+    public void copyFrom(Reading other) {
+        deviceId = other.deviceId;
+        tagId = other.tagId;
+        x = other.x;
+        y = other.y;
+        rssi = other.rssi;
+        sentAtMillis = other.sentAtMillis;
+        sequence = other.sequence;
+        receivedAtNanos = other.receivedAtNanos;
+        decodedAtNanos = other.decodedAtNanos;
+        distance = other.distance;
+        setPayload(other.payload, 0, other.payloadLength);
+    }
+
+    @Override
+    public String toString() {
+        return "Reading[" + deviceId + (tagId != null ? " -> " + tagId : "") + ", x=" + x + ", y=" + y + ", rssi=" + rssi + "]";
+    }
+}
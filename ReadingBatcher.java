@@ -0,0 +1,128 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Packs encoded readings into one envelope message (ReadingEncoder.BATCH_V1) and hands it to a
+// sender once it holds maxItems readings or its oldest reading has waited lingerMillis, trading
+// a bounded delay for one PUBLISH/PUBACK per batch instead of per reading. Items keep their
+// order inside an envelope and envelopes are sent in order, so per-device order survives as
+// long as a device always goes through the same batcher. Thread-safe; the sender is called
+// with the batcher's lock held, either from add() or from the linger timer thread.
+public class ReadingBatcher implements AutoCloseable {
+    public interface Sender {
+        void send(byte[] envelope, int items) throws Exception;
+    }
+
+    private static final int HEADER = 3;
+
+    private final int maxItems;
+    private final long lingerNanos;
+    private final Sender sender;
+    private final ScheduledExecutorService timer;
+    private final ScheduledFuture<?> lingerTask;
+
+    private byte[] buf = new byte[4096];
+    private int len = HEADER;
+    private int count;
+    // nanoTime each pending item was added, for the added-latency histogram
+    private final long[] addedAt;
+
+    private long batches;
+    private long items;
+    private long fullFlushes;
+    private long failures;
+    private final LatencyHistogram addedLatency = new LatencyHistogram();
+
+    public ReadingBatcher(int maxItems, long lingerMillis, Sender sender) {
+        this.maxItems = Math.max(1, Math.min(maxItems, 0xFFFF));
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, lingerMillis));
+        this.sender = sender;
+        addedAt = new long[this.maxItems];
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "reading-batcher-linger");
+            t.setDaemon(true);
+            return t;
+        });
+        // Check at a quarter of the linger so a batch never waits much more than lingerMillis
+        long checkNanos = Math.max(lingerNanos / 4, 100_000);
+        lingerTask = timer.scheduleAtFixedRate(this::flushIfLingered, checkNanos, checkNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public synchronized void add(byte[] payload, int off, int length) {
+        if (length > 0xFFFF) throw new IllegalArgumentException("payload too large for a batch: " + length);
+        ensure(len + 2 + length);
+        buf[len++] = (byte) (length >>> 8);
+        buf[len++] = (byte) length;
+        System.arraycopy(payload, off, buf, len, length);
+        len += length;
+        addedAt[count++] = System.nanoTime();
+        if (count == maxItems) {
+            fullFlushes++;
+            flush();
+        }
+    }
+
+    public synchronized void flush() {
+        if (count == 0) return;
+        buf[0] = ReadingEncoder.BATCH_V1;
+        buf[1] = (byte) (count >>> 8);
+        buf[2] = (byte) count;
+        byte[] envelope = java.util.Arrays.copyOf(buf, len);
+        long now = System.nanoTime();
+        for (int i = 0; i < count; i++) addedLatency.recordNanos(now - addedAt[i]);
+        batches++;
+        items += count;
+        int sent = count;
+        count = 0;
+        len = HEADER;
+        try {
+            sender.send(envelope, sent);
+        } catch (Exception ex) {
+            failures++;
+        }
+    }
+
+    // Sends what is pending and stops the linger timer
+    @Override
+    public void close() {
+        lingerTask.cancel(false);
+        timer.shutdown();
+        flush();
+    }
+
+    public synchronized long batches() {
+        return batches;
+    }
+
+    public synchronized long items() {
+        return items;
+    }
+
+    public synchronized double averageBatchSize() {
+        return batches == 0 ? 0 : (double) items / batches;
+    }
+
+    // Envelopes whose sender threw; their items are counted in items() but were not sent
+    public synchronized long failures() {
+        return failures;
+    }
+
+    // Time each reading spent waiting in a batch before it was handed to the sender
+    public LatencyHistogram addedLatency() {
+        return addedLatency;
+    }
+
+    public synchronized String summary() {
+        return String.format("%d batches, avg %.1f readings/batch (%d full, %d by linger), send failures %d; added latency %s",
+                batches, averageBatchSize(), fullFlushes, batches - fullFlushes, failures, addedLatency.summary());
+    }
+
+    private synchronized void flushIfLingered() {
+        if (count > 0 && System.nanoTime() - addedAt[0] >= lingerNanos) flush();
+    }
+
+    private void ensure(int capacity) {
+        if (buf.length < capacity) buf = java.util.Arrays.copyOf(buf, Math.max(capacity, buf.length * 2));
+    }
+}
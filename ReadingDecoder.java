@@ -0,0 +1,418 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Single-pass decoder for the publisher's reading payload, either JSON
+//   {"deviceId":"...","tagId":"...","coordinates":{"x":..,"y":..},"rssi":..,"ts":..,"seq":..}
+// (tagId, ts and seq optional)
+// or the compact binary frame written by ReadingEncoder.encodeBinary, told apart by the first
+// byte (a JSON object starts with '{' or whitespace, a binary frame with its version byte).
+// Works directly on the MQTT payload bytes and fills a reusable Reading, so a well-formed
+// message allocates nothing once its deviceId is cached. Errors are reported as status codes
+// (plus errorOffset()) instead of exceptions. Not thread-safe: use one decoder per thread.
+public class ReadingDecoder {
+    public static final int OK = 0;
+    public static final int ERR_EMPTY = 1;
+    public static final int ERR_SYNTAX = 2;
+    public static final int ERR_NUMBER = 3;
+    public static final int ERR_MISSING_DEVICE_ID = 4;
+    public static final int ERR_MISSING_COORDINATES = 5;
+    public static final int ERR_MISSING_RSSI = 6;
+    public static final int ERR_TRUNCATED = 7;
+    public static final int ERR_UNKNOWN_FORMAT = 8;
+
+    private static final byte[] KEY_DEVICE_ID = ascii("deviceId");
+    private static final byte[] KEY_TAG_ID = ascii("tagId");
+    private static final byte[] KEY_COORDINATES = ascii("coordinates");
+    private static final byte[] KEY_X = ascii("x");
+    private static final byte[] KEY_Y = ascii("y");
+    private static final byte[] KEY_RSSI = ascii("rssi");
+    private static final byte[] KEY_TS = ascii("ts");
+    private static final byte[] KEY_SEQ = ascii("seq");
+
+    // Exactly representable powers of ten; m * 10^e is correctly rounded for m < 2^53, |e| <= 22
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    // Direct-mapped cache of deviceId bytes -> String; a hit costs a hash and a byte compare
+    private static final int ID_CACHE_SIZE = 256;
+    private final byte[][] idKeys = new byte[ID_CACHE_SIZE][];
+    private final String[] idValues = new String[ID_CACHE_SIZE];
+
+    private int pos;
+    private int errorOffset = -1;
+
+    public static String describe(int status) {
+        switch (status) {
+            case OK: return "ok";
+            case ERR_EMPTY: return "empty payload";
+            case ERR_SYNTAX: return "malformed JSON";
+            case ERR_NUMBER: return "malformed number";
+            case ERR_MISSING_DEVICE_ID: return "missing deviceId";
+            case ERR_MISSING_COORDINATES: return "missing coordinates";
+            case ERR_MISSING_RSSI: return "missing rssi";
+            case ERR_TRUNCATED: return "truncated binary frame";
+            case ERR_UNKNOWN_FORMAT: return "unknown payload format";
+            default: return "unknown error " + status;
+        }
+    }
+
+    // Offset of the byte where the last decode failed, or -1 after a successful decode
+    public int errorOffset() {
+        return errorOffset;
+    }
+
+    public int decode(byte[] buf, Reading out) {
+        return decode(buf, 0, buf.length, out);
+    }
+
+    public int decode(byte[] buf, int off, int len, Reading out) {
+        out.reset();
+        errorOffset = -1;
+        int end = off + len;
+        pos = off;
+        if (len > 0 && buf[off] == ReadingEncoder.BINARY_V1) return decodeBinary(buf, end, out);
+        skipWs(buf, end);
+        if (pos >= end) return fail(ERR_EMPTY);
+        if (buf[pos] != '{') return fail(ERR_UNKNOWN_FORMAT);
+        pos++;
+        boolean first = true;
+        while (true) {
+            skipWs(buf, end);
+            if (pos >= end) return fail(ERR_SYNTAX);
+            if (buf[pos] == '}') { pos++; break; }
+            if (!first) {
+                if (buf[pos] != ',') return fail(ERR_SYNTAX);
+                pos++;
+                skipWs(buf, end);
+            }
+            first = false;
+            int keyStart = pos + 1;
+            int keyEnd = readKey(buf, end);
+            if (keyEnd < 0) return fail(ERR_SYNTAX);
+            if (matches(buf, keyStart, keyEnd, KEY_DEVICE_ID)) {
+                out.deviceId = readString(buf, end);
+                if (out.deviceId == null) return fail(ERR_SYNTAX);
+            } else if (matches(buf, keyStart, keyEnd, KEY_TAG_ID)) {
+                out.tagId = readString(buf, end);
+                if (out.tagId == null) return fail(ERR_SYNTAX);
+            } else if (matches(buf, keyStart, keyEnd, KEY_COORDINATES)) {
+                int status = readCoordinates(buf, end, out);
+                if (status != OK) return fail(status);
+            } else if (matches(buf, keyStart, keyEnd, KEY_RSSI)) {
+                out.rssi = readNumber(buf, end);
+                if (Double.isNaN(out.rssi)) return fail(ERR_NUMBER);
+            } else if (matches(buf, keyStart, keyEnd, KEY_TS)) {
+                double ts = readNumber(buf, end);
+                if (Double.isNaN(ts)) return fail(ERR_NUMBER);
+                out.sentAtMillis = (long) ts;
+            } else if (matches(buf, keyStart, keyEnd, KEY_SEQ)) {
+                double seq = readNumber(buf, end);
+                if (Double.isNaN(seq)) return fail(ERR_NUMBER);
+                out.sequence = (long) seq;
+            } else if (!skipValue(buf, end)) {
+                return fail(ERR_SYNTAX);
+            }
+        }
+        if (out.deviceId == null) return fail(ERR_MISSING_DEVICE_ID);
+        if (Double.isNaN(out.x) || Double.isNaN(out.y)) return fail(ERR_MISSING_COORDINATES);
+        if (Double.isNaN(out.rssi)) return fail(ERR_MISSING_RSSI);
+        return OK;
+    }
+
+    // Binary frame, big-endian (see ReadingEncoder.encodeBinary):
+    //   u8 version, u8 id length, id bytes, f32 x, f32 y, i16 rssi (centi-dBm), i64 sent-at millis,
+    //   optional u32 sequence, then optional u8 tag length and tag bytes
+    private int decodeBinary(byte[] buf, int end, Reading out) {
+        pos++;
+        if (pos >= end) return fail(ERR_TRUNCATED);
+        int idLen = buf[pos++] & 0xFF;
+        if (idLen == 0) return fail(ERR_MISSING_DEVICE_ID);
+        if (end - pos < idLen + ReadingEncoder.BINARY_FIXED_TAIL) return fail(ERR_TRUNCATED);
+        out.deviceId = cachedString(buf, pos, pos + idLen);
+        pos += idLen;
+        out.x = Float.intBitsToFloat(readInt(buf));
+        out.y = Float.intBitsToFloat(readInt(buf));
+        out.rssi = ((short) (((buf[pos] & 0xFF) << 8) | (buf[pos + 1] & 0xFF))) / 100.0;
+        pos += 2;
+        out.sentAtMillis = ((long) readInt(buf) << 32) | (readInt(buf) & 0xFFFFFFFFL);
+        if (end - pos >= 4) out.sequence = readInt(buf) & 0xFFFFFFFFL;
+        if (end - pos >= 1) {
+            int tagLen = buf[pos++] & 0xFF;
+            if (end - pos < tagLen) return fail(ERR_TRUNCATED);
+            if (tagLen > 0) out.tagId = cachedString(buf, pos, pos + tagLen);
+            pos += tagLen;
+        }
+        return OK;
+    }
+
+    private int readInt(byte[] buf) {
+        int v = ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16) | ((buf[pos + 2] & 0xFF) << 8) | (buf[pos + 3] & 0xFF);
+        pos += 4;
+        return v;
+    }
+
+    // Field lookups backing the legacy SimpleJsonParser API; null/NaN when absent or malformed
+    public String stringField(byte[] buf, String key) {
+        pos = 0;
+        if (!seekMember(buf, buf.length, ascii(key))) return null;
+        return readString(buf, buf.length);
+    }
+
+    public double numberField(byte[] buf, String key) {
+        pos = 0;
+        if (!seekMember(buf, buf.length, ascii(key))) return Double.NaN;
+        return readNumber(buf, buf.length);
+    }
+
+    public double coordinateField(byte[] buf, String axis) {
+        pos = 0;
+        if (!seekMember(buf, buf.length, KEY_COORDINATES)) return Double.NaN;
+        if (!seekMember(buf, buf.length, ascii(axis))) return Double.NaN;
+        return readNumber(buf, buf.length);
+    }
+
+    private int readCoordinates(byte[] buf, int end, Reading out) {
+        if (pos >= end || buf[pos] != '{') return ERR_SYNTAX;
+        pos++;
+        boolean first = true;
+        while (true) {
+            skipWs(buf, end);
+            if (pos >= end) return ERR_SYNTAX;
+            if (buf[pos] == '}') { pos++; return OK; }
+            if (!first) {
+                if (buf[pos] != ',') return ERR_SYNTAX;
+                pos++;
+                skipWs(buf, end);
+            }
+            first = false;
+            int keyStart = pos + 1;
+            int keyEnd = readKey(buf, end);
+            if (keyEnd < 0) return ERR_SYNTAX;
+            if (matches(buf, keyStart, keyEnd, KEY_X)) {
+                out.x = readNumber(buf, end);
+                if (Double.isNaN(out.x)) return ERR_NUMBER;
+            } else if (matches(buf, keyStart, keyEnd, KEY_Y)) {
+                out.y = readNumber(buf, end);
+                if (Double.isNaN(out.y)) return ERR_NUMBER;
+            } else if (!skipValue(buf, end)) {
+                return ERR_SYNTAX;
+            }
+        }
+    }
+
+    // Positions pos on the value of key inside the object starting at pos
+    private boolean seekMember(byte[] buf, int end, byte[] key) {
+        skipWs(buf, end);
+        if (pos >= end || buf[pos] != '{') return false;
+        pos++;
+        boolean first = true;
+        while (true) {
+            skipWs(buf, end);
+            if (pos >= end || buf[pos] == '}') return false;
+            if (!first) {
+                if (buf[pos] != ',') return false;
+                pos++;
+                skipWs(buf, end);
+            }
+            first = false;
+            int keyStart = pos + 1;
+            int keyEnd = readKey(buf, end);
+            if (keyEnd < 0) return false;
+            if (matches(buf, keyStart, keyEnd, key)) return true;
+            if (!skipValue(buf, end)) return false;
+        }
+    }
+
+    // Reads "key": and leaves pos on the value; returns the end offset of the key bytes or -1
+    private int readKey(byte[] buf, int end) {
+        if (pos >= end || buf[pos] != '"') return -1;
+        int keyEnd = scanString(buf, end);
+        if (keyEnd < 0) return -1;
+        skipWs(buf, end);
+        if (pos >= end || buf[pos] != ':') return -1;
+        pos++;
+        skipWs(buf, end);
+        return keyEnd;
+    }
+
+    // Skips a quoted string starting at pos; returns the offset of the closing quote or -1
+    private int scanString(byte[] buf, int end) {
+        int i = pos + 1;
+        while (i < end) {
+            byte c = buf[i];
+            if (c == '"') {
+                pos = i + 1;
+                return i;
+            }
+            i += (c == '\\') ? 2 : 1;
+        }
+        return -1;
+    }
+
+    private String readString(byte[] buf, int end) {
+        if (pos >= end || buf[pos] != '"') return null;
+        int start = pos + 1;
+        int close = scanString(buf, end);
+        if (close < 0) return null;
+        for (int i = start; i < close; i++) {
+            if (buf[i] == '\\') return unescape(buf, start, close);
+        }
+        return cachedString(buf, start, close);
+    }
+
+    private String cachedString(byte[] buf, int start, int end) {
+        int h = 0x811c9dc5;
+        for (int i = start; i < end; i++) {
+            h = (h ^ buf[i]) * 0x01000193;
+        }
+        int slot = (h ^ (h >>> 16)) & (ID_CACHE_SIZE - 1);
+        byte[] key = idKeys[slot];
+        if (key != null && Arrays.equals(key, 0, key.length, buf, start, end)) {
+            return idValues[slot];
+        }
+        String value = new String(buf, start, end - start, StandardCharsets.UTF_8);
+        idKeys[slot] = Arrays.copyOfRange(buf, start, end);
+        idValues[slot] = value;
+        return value;
+    }
+
+    // Slow path for ids containing escapes; not cached since publishers never produce them
+    private static String unescape(byte[] buf, int start, int end) {
+        String raw = new String(buf, start, end - start, StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\' || i + 1 >= raw.length()) {
+                sb.append(c);
+                continue;
+            }
+            char e = raw.charAt(++i);
+            switch (e) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                case 'r': sb.append('\r'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (i + 4 < raw.length()) {
+                        sb.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                        i += 4;
+                    }
+                    break;
+                default: sb.append(e);
+            }
+        }
+        return sb.toString();
+    }
+
+    // Parses a JSON number at pos; returns NaN if there is none
+    private double readNumber(byte[] buf, int end) {
+        int start = pos;
+        int i = pos;
+        boolean negative = false;
+        if (i < end && buf[i] == '-') { negative = true; i++; }
+        long mantissa = 0;
+        int scale = 0;
+        int digits = 0;
+        boolean truncated = false;
+        while (i < end && buf[i] >= '0' && buf[i] <= '9') {
+            if (mantissa < MAX_EXACT_MANTISSA) {
+                mantissa = mantissa * 10 + (buf[i] - '0');
+            } else {
+                scale++;
+                truncated = true;
+            }
+            digits++;
+            i++;
+        }
+        if (i < end && buf[i] == '.') {
+            i++;
+            while (i < end && buf[i] >= '0' && buf[i] <= '9') {
+                if (mantissa < MAX_EXACT_MANTISSA) {
+                    mantissa = mantissa * 10 + (buf[i] - '0');
+                    scale--;
+                } else {
+                    truncated = true;
+                }
+                digits++;
+                i++;
+            }
+        }
+        if (digits == 0) return Double.NaN;
+        if (i < end && (buf[i] == 'e' || buf[i] == 'E')) {
+            i++;
+            boolean expNegative = false;
+            if (i < end && (buf[i] == '+' || buf[i] == '-')) {
+                expNegative = buf[i] == '-';
+                i++;
+            }
+            int exp = 0;
+            int expDigits = 0;
+            while (i < end && buf[i] >= '0' && buf[i] <= '9') {
+                if (exp < 10000) exp = exp * 10 + (buf[i] - '0');
+                expDigits++;
+                i++;
+            }
+            if (expDigits == 0) return Double.NaN;
+            scale += expNegative ? -exp : exp;
+        }
+        pos = i;
+        double value;
+        if (!truncated && mantissa <= MAX_EXACT_MANTISSA && scale >= -22 && scale <= 22) {
+            value = scale >= 0 ? mantissa * POW10[scale] : mantissa / POW10[-scale];
+        } else {
+            // Rare: too many digits or a huge exponent; defer to the JDK for correct rounding
+            value = Math.abs(Double.parseDouble(new String(buf, start, i - start, StandardCharsets.ISO_8859_1)));
+        }
+        return negative ? -value : value;
+    }
+
+    // Skips any JSON value at pos (used for fields we don't care about)
+    private boolean skipValue(byte[] buf, int end) {
+        if (pos >= end) return false;
+        byte c = buf[pos];
+        if (c == '"') return scanString(buf, end) >= 0;
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            while (pos < end) {
+                c = buf[pos];
+                if (c == '"') {
+                    if (scanString(buf, end) < 0) return false;
+                    continue;
+                }
+                if (c == '{' || c == '[') depth++;
+                else if (c == '}' || c == ']') depth--;
+                pos++;
+                if (depth == 0) return true;
+            }
+            return false;
+        }
+        int start = pos;
+        while (pos < end && buf[pos] != ',' && buf[pos] != '}' && buf[pos] != ']' && !isWs(buf[pos])) pos++;
+        return pos > start;
+    }
+
+    private void skipWs(byte[] buf, int end) {
+        while (pos < end && isWs(buf[pos])) pos++;
+    }
+
+    private static boolean isWs(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static boolean matches(byte[] buf, int start, int end, byte[] key) {
+        return Arrays.equals(buf, start, end, key, 0, key.length);
+    }
+
+    private int fail(int status) {
+        errorOffset = pos;
+        return status;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,189 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Writes reading payloads into a reusable byte buffer, the publishing-side counterpart of
+// ReadingDecoder. JSON numbers are written with two decimals by hand (no String.format, and no
+// locale-dependent decimal separator); the binary frame is a fixed layout of roughly half the
+// size. Not thread-safe: use one encoder per thread.
+public class ReadingEncoder {
+    // First byte of a binary frame; can never start a JSON payload
+    public static final byte BINARY_V1 = (byte) 0xB1;
+    // First byte of a batch envelope: u8 version, u16 item count, then per item u16 length and
+    // the item's own JSON or binary payload (see ReadingBatcher)
+    public static final byte BATCH_V1 = (byte) 0xB2;
+    // f32 x, f32 y, i16 rssi, i64 timestamp
+    static final int BINARY_FIXED_TAIL = 4 + 4 + 2 + 8;
+
+    public enum Format {
+        JSON, BINARY;
+
+        public static Format parse(String name, Format def) {
+            if (name == null) return def;
+            try {
+                return valueOf(name.trim().toUpperCase());
+            } catch (IllegalArgumentException ex) {
+                return def;
+            }
+        }
+    }
+
+    private static final byte[] JSON_ID = ascii("{\"deviceId\":\"");
+    private static final byte[] JSON_TAG = ascii("\",\"tagId\":\"");
+    private static final byte[] JSON_X = ascii("\",\"coordinates\":{\"x\":");
+    private static final byte[] JSON_Y = ascii(",\"y\":");
+    private static final byte[] JSON_RSSI = ascii("},\"rssi\":");
+    private static final byte[] JSON_TS = ascii(",\"ts\":");
+    private static final byte[] JSON_SEQ = ascii(",\"seq\":");
+
+    private byte[] buf = new byte[256];
+    private int len;
+
+    public byte[] buffer() {
+        return buf;
+    }
+
+    public int length() {
+        return len;
+    }
+
+    // Copy of the encoded payload, for APIs that keep a reference to the array (MqttMessage)
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, len);
+    }
+
+    // sentAtMillis is the publisher clock and sequence a per-device counter starting at 1; the
+    // subscriber derives transit latency and loss from them. 0 leaves either out.
+    public int encode(Format format, byte[] deviceIdUtf8, double x, double y, double rssi, long sentAtMillis, long sequence) {
+        return encode(format, deviceIdUtf8, null, x, y, rssi, sentAtMillis, sequence);
+    }
+
+    // tagIdUtf8 names the tag the anchor heard; null for single-receiver readings
+    public int encode(Format format, byte[] deviceIdUtf8, byte[] tagIdUtf8, double x, double y, double rssi, long sentAtMillis, long sequence) {
+        return format == Format.BINARY
+            ? encodeBinary(deviceIdUtf8, tagIdUtf8, x, y, rssi, sentAtMillis, sequence)
+            : encodeJson(deviceIdUtf8, tagIdUtf8, x, y, rssi, sentAtMillis, sequence);
+    }
+
+    public int encodeJson(String deviceId, double x, double y, double rssi) {
+        return encodeJson(deviceId.getBytes(StandardCharsets.UTF_8), x, y, rssi, 0, 0);
+    }
+
+    public int encodeJson(byte[] deviceIdUtf8, double x, double y, double rssi, long sentAtMillis, long sequence) {
+        return encodeJson(deviceIdUtf8, null, x, y, rssi, sentAtMillis, sequence);
+    }
+
+    // {"deviceId":"..."[,"tagId":"..."],"coordinates":{"x":..,"y":..},"rssi":..[,"ts":..][,"seq":..]};
+    // the ids must not need escaping
+    public int encodeJson(byte[] deviceIdUtf8, byte[] tagIdUtf8, double x, double y, double rssi, long sentAtMillis, long sequence) {
+        len = 0;
+        ensure(deviceIdUtf8.length + (tagIdUtf8 != null ? tagIdUtf8.length + JSON_TAG.length : 0) + 144);
+        put(JSON_ID);
+        put(deviceIdUtf8);
+        if (tagIdUtf8 != null) {
+            put(JSON_TAG);
+            put(tagIdUtf8);
+        }
+        put(JSON_X);
+        putFixed2(x);
+        put(JSON_Y);
+        putFixed2(y);
+        put(JSON_RSSI);
+        putFixed2(rssi);
+        if (sentAtMillis > 0) {
+            put(JSON_TS);
+            putLong(sentAtMillis);
+        }
+        if (sequence > 0) {
+            put(JSON_SEQ);
+            putLong(sequence);
+        }
+        buf[len++] = '}';
+        return len;
+    }
+
+    public int encodeBinary(byte[] deviceIdUtf8, double x, double y, double rssi, long sentAtMillis) {
+        return encodeBinary(deviceIdUtf8, x, y, rssi, sentAtMillis, 0);
+    }
+
+    public int encodeBinary(byte[] deviceIdUtf8, double x, double y, double rssi, long sentAtMillis, long sequence) {
+        return encodeBinary(deviceIdUtf8, null, x, y, rssi, sentAtMillis, sequence);
+    }
+
+    // u8 version, u8 id length, id bytes (at most 255), f32 x, f32 y, i16 rssi in centi-dBm,
+    // i64 publisher timestamp in epoch millis, then optionally u32 sequence and optionally u8 tag
+    // length and tag bytes (a tag forces the sequence, 0 if unknown); all big-endian.
+    // Decoders that predate either field ignore the trailing bytes.
+    public int encodeBinary(byte[] deviceIdUtf8, byte[] tagIdUtf8, double x, double y, double rssi, long sentAtMillis, long sequence) {
+        int idLen = Math.min(deviceIdUtf8.length, 255);
+        int tagLen = tagIdUtf8 != null ? Math.min(tagIdUtf8.length, 255) : 0;
+        len = 0;
+        ensure(2 + idLen + BINARY_FIXED_TAIL + 4 + 1 + tagLen);
+        buf[len++] = BINARY_V1;
+        buf[len++] = (byte) idLen;
+        System.arraycopy(deviceIdUtf8, 0, buf, len, idLen);
+        len += idLen;
+        putInt(Float.floatToIntBits((float) x));
+        putInt(Float.floatToIntBits((float) y));
+        long centi = Math.round(rssi * 100);
+        short rssiCenti = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, centi));
+        buf[len++] = (byte) (rssiCenti >> 8);
+        buf[len++] = (byte) rssiCenti;
+        putInt((int) (sentAtMillis >>> 32));
+        putInt((int) sentAtMillis);
+        if (sequence > 0 || tagIdUtf8 != null) putInt((int) sequence);
+        if (tagIdUtf8 != null) {
+            buf[len++] = (byte) tagLen;
+            System.arraycopy(tagIdUtf8, 0, buf, len, tagLen);
+            len += tagLen;
+        }
+        return len;
+    }
+
+    private void putInt(int v) {
+        buf[len++] = (byte) (v >>> 24);
+        buf[len++] = (byte) (v >>> 16);
+        buf[len++] = (byte) (v >>> 8);
+        buf[len++] = (byte) v;
+    }
+
+    private void putFixed2(double v) {
+        if (Double.isNaN(v) || Double.isInfinite(v)) v = 0;
+        long cents = Math.round(Math.abs(v) * 100);
+        if (v < 0 && cents != 0) buf[len++] = '-';
+        putLong(cents / 100);
+        buf[len++] = '.';
+        int frac = (int) (cents % 100);
+        buf[len++] = (byte) ('0' + frac / 10);
+        buf[len++] = (byte) ('0' + frac % 10);
+    }
+
+    private void putLong(long v) {
+        if (v == 0) {
+            buf[len++] = '0';
+            return;
+        }
+        int start = len;
+        while (v > 0) {
+            buf[len++] = (byte) ('0' + (v % 10));
+            v /= 10;
+        }
+        for (int i = start, j = len - 1; i < j; i++, j--) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+    }
+
+    private void put(byte[] bytes) {
+        System.arraycopy(bytes, 0, buf, len, bytes.length);
+        len += bytes.length;
+    }
+
+    private void ensure(int capacity) {
+        if (buf.length < capacity) buf = new byte[Math.max(capacity, buf.length * 2)];
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,160 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Bounded lock-free ring of preallocated Reading slots (Vyukov-style sequence numbers).
+// Producers copy into a claimed slot and consumers copy out, so offer/poll never allocate.
+// Any number of producers is supported; consumers are normally a single processing thread,
+// but a producer may also claim from the head to implement DROP_OLDEST.
+public class ReadingQueue {
+    // What offer() does when the queue is full
+    public enum Backpressure {
+        DROP_OLDEST, // evict the oldest queued reading to make room
+        BLOCK,       // wait until the consumer frees a slot
+        SAMPLE;      // above half capacity admit only every Nth reading, drop the rest
+
+        public static Backpressure parse(String name, Backpressure def) {
+            if (name == null) return def;
+            try {
+                return valueOf(name.trim().toUpperCase().replace('-', '_'));
+            } catch (IllegalArgumentException ex) {
+                return def;
+            }
+        }
+    }
+
+    private final Reading[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final Backpressure policy;
+    private final int sampleEvery;
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private final LongAdder offered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public ReadingQueue(int capacity, Backpressure policy, int sampleEvery) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new Reading[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Reading();
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+        this.policy = policy;
+        this.sampleEvery = Math.max(1, sampleEvery);
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public int depth() {
+        long d = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(d, slots.length));
+    }
+
+    public long offered() {
+        return offered.sum();
+    }
+
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    public Backpressure policy() {
+        return policy;
+    }
+
+    // Returns false if the reading itself was dropped (evicting an older one still returns true)
+    public boolean offer(Reading r) {
+        offered.increment();
+        switch (policy) {
+            case DROP_OLDEST:
+                while (!tryOffer(r)) {
+                    if (discardOldest()) dropped.increment();
+                }
+                return true;
+            case BLOCK:
+                int spins = 0;
+                while (!tryOffer(r)) {
+                    if (++spins < 100) Thread.onSpinWait();
+                    else LockSupport.parkNanos(50_000);
+                }
+                return true;
+            case SAMPLE:
+            default:
+                if (depth() >= slots.length / 2 && sampleCounter.getAndIncrement() % sampleEvery != 0) {
+                    dropped.increment();
+                    return false;
+                }
+                if (!tryOffer(r)) {
+                    dropped.increment();
+                    return false;
+                }
+                return true;
+        }
+    }
+
+    public boolean poll(Reading out) {
+        long pos = head.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long dif = sequences.get(idx) - (pos + 1);
+            if (dif == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    out.copyFrom(slots[idx]);
+                    sequences.set(idx, pos + slots.length);
+                    return true;
+                }
+                pos = head.get();
+            } else if (dif < 0) {
+                return false;
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    private boolean tryOffer(Reading r) {
+        long pos = tail.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long dif = sequences.get(idx) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots[idx].copyFrom(r);
+                    sequences.set(idx, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (dif < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    private boolean discardOldest() {
+        long pos = head.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long dif = sequences.get(idx) - (pos + 1);
+            if (dif == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    sequences.set(idx, pos + slots.length);
+                    return true;
+                }
+                pos = head.get();
+            } else if (dif < 0) {
+                return false;
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+// Tuning knobs read from environment variables (same convention as CLIENT_SUFFIX), with defaults
+
+import java.util.HashMap;
+import java.util.Map;
+
+public final class Settings {
+    private Settings() {}
+
+    public static String getString(String name, String def) {
+        String value = System.getenv(name);
+        return (value == null || value.isBlank()) ? def : value.trim();
+    }
+
+    public static int getInt(String name, int def) {
+        String value = getString(name, null);
+        if (value == null) return def;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            return def;
+        }
+    }
+
+    public static long getLong(String name, long def) {
+        String value = getString(name, null);
+        if (value == null) return def;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            return def;
+        }
+    }
+
+    public static double getDouble(String name, double def) {
+        String value = getString(name, null);
+        if (value == null) return def;
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            return def;
+        }
+    }
+
+    // --name=value command-line arguments; anything else (e.g. --headless) is ignored
+    public static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            if (eq > 2) options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    // Command-line option, else <envPrefix><NAME> from the environment, else the default
+    public static String option(Map<String, String> options, String envPrefix, String name, String def) {
+        String value = options.get(name);
+        if (value != null) return value;
+        return getString(envPrefix + name.toUpperCase().replace('-', '_'), def);
+    }
+
+    public static boolean getBoolean(String name, boolean def) {
+        String value = getString(name, null);
+        if (value == null) return def;
+        return value.equalsIgnoreCase("true") || value.equals("1") || value.equalsIgnoreCase("yes");
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Uniform grid over slot-indexed points (AnchorSet slots, snapshot indexes) for radius and
+// rectangle queries that only touch the cells they overlap. Each cell keeps an intrusive doubly
+// linked list through per-slot next/prev arrays, so moving a point is O(1) and allocation-free.
+// Points outside the bounds are kept in the nearest border cell; queries check exact
+// coordinates, so results stay correct and only get slower out there. Not thread-safe.
+public class SpatialGrid {
+    private final double minX, minY, cellSize;
+    private final int cols, rows;
+    private final int[] heads;
+
+    private int[] next = new int[16];
+    private int[] prev = new int[16];
+    private int[] cellOf = new int[16];
+    private double[] xs = new double[16];
+    private double[] ys = new double[16];
+    private int size;
+
+    public SpatialGrid(double minX, double minY, double maxX, double maxY, double cellSize) {
+        this.minX = minX;
+        this.minY = minY;
+        this.cellSize = cellSize;
+        cols = Math.max(1, (int) Math.ceil((maxX - minX) / cellSize));
+        rows = Math.max(1, (int) Math.ceil((maxY - minY) / cellSize));
+        heads = new int[cols * rows];
+        Arrays.fill(heads, -1);
+        Arrays.fill(cellOf, -1);
+    }
+
+    // Square of +-SPATIAL_EXTENT (default 1000) in SPATIAL_CELL_SIZE cells (default 25)
+    public static SpatialGrid fromSettings() {
+        double extent = Settings.getDouble("SPATIAL_EXTENT", 1000);
+        return new SpatialGrid(-extent, -extent, extent, extent, Settings.getDouble("SPATIAL_CELL_SIZE", 25));
+    }
+
+    public void update(int slot, double x, double y) {
+        ensureCapacity(slot + 1);
+        int cell = cellIndex(x, y);
+        xs[slot] = x;
+        ys[slot] = y;
+        if (cellOf[slot] == cell) return;
+        if (cellOf[slot] >= 0) unlink(slot);
+        else size++;
+        cellOf[slot] = cell;
+        prev[slot] = -1;
+        next[slot] = heads[cell];
+        if (heads[cell] >= 0) prev[heads[cell]] = slot;
+        heads[cell] = slot;
+    }
+
+    public void remove(int slot) {
+        if (slot >= cellOf.length || cellOf[slot] < 0) return;
+        unlink(slot);
+        cellOf[slot] = -1;
+        size--;
+    }
+
+    public void clear() {
+        Arrays.fill(heads, -1);
+        Arrays.fill(cellOf, -1);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Visits every slot within radius of (cx, cy)
+    public void queryRadius(double cx, double cy, double radius, IntConsumer visitor) {
+        double r2 = radius * radius;
+        int c0 = col(cx - radius), c1 = col(cx + radius);
+        int r0 = row(cy - radius), r1 = row(cy + radius);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                for (int s = heads[r * cols + c]; s >= 0; s = next[s]) {
+                    double dx = xs[s] - cx, dy = ys[s] - cy;
+                    if (dx * dx + dy * dy <= r2) visitor.accept(s);
+                }
+            }
+        }
+    }
+
+    // Visits every slot inside the rectangle, edges included
+    public void queryRect(double x0, double y0, double x1, double y1, IntConsumer visitor) {
+        int c0 = col(x0), c1 = col(x1);
+        int r0 = row(y0), r1 = row(y1);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                for (int s = heads[r * cols + c]; s >= 0; s = next[s]) {
+                    if (xs[s] >= x0 && xs[s] <= x1 && ys[s] >= y0 && ys[s] <= y1) visitor.accept(s);
+                }
+            }
+        }
+    }
+
+    private void unlink(int slot) {
+        int p = prev[slot], n = next[slot];
+        if (p >= 0) next[p] = n;
+        else heads[cellOf[slot]] = n;
+        if (n >= 0) prev[n] = p;
+    }
+
+    private int cellIndex(double x, double y) {
+        return row(y) * cols + col(x);
+    }
+
+    private int col(double x) {
+        int c = (int) Math.floor((x - minX) / cellSize);
+        return c < 0 ? 0 : (c >= cols ? cols - 1 : c);
+    }
+
+    private int row(double y) {
+        int r = (int) Math.floor((y - minY) / cellSize);
+        return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= cellOf.length) return;
+        int cap = Math.max(n, cellOf.length * 2);
+        int old = cellOf.length;
+        next = Arrays.copyOf(next, cap);
+        prev = Arrays.copyOf(prev, cap);
+        cellOf = Arrays.copyOf(cellOf, cap);
+        Arrays.fill(cellOf, old, cap, -1);
+        xs = Arrays.copyOf(xs, cap);
+        ys = Arrays.copyOf(ys, cap);
+    }
+}
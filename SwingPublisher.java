@@ -3,19 +3,54 @@ import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.concurrent.atomic.AtomicLong;
 
-// Publisher class
+// Publisher class. Publishes through MqttAsyncClient, so the Swing timer never waits on the
+// broker. While the connection is down, readings go to Paho's bounded disconnected buffer
+// (oldest dropped first) and are flushed in bulk on reconnect. Configured with:
+//   PUBLISH_MAX_INFLIGHT (default 100)    unacknowledged QoS 1/2 messages on the connection
+//   PUBLISH_BUFFER_SIZE (default 5000)    messages kept while disconnected (0 disables buffering)
+//   PUBLISH_BUFFER_DROP_OLDEST (true)     drop the oldest buffered message when full, else the newest
+//   READING_QOS (1), MESSAGE_QOS (1)      QoS of RSSI readings and of messages typed in the window
 public class SwingPublisher extends JFrame {
     private static final String BROKER_URL = "tcp://localhost:1883";
     private static final String CLIENT_ID_PREFIX = "SwingPublisher";
-    private static final String TOPIC = "sensor/data";
+    // Topic from TOPIC_TEMPLATE, for this device in ZONE (default z0)
+    private static final TopicScheme TOPICS = TopicScheme.fromSettings();
+    private static final String ZONE = Settings.getString("ZONE", TopicScheme.DEFAULT_ZONE);
+    // json (default) or binary; subscribers detect the format per message
+    private static final ReadingEncoder.Format FORMAT =
+        ReadingEncoder.Format.parse(Settings.getString("PAYLOAD_FORMAT", null), ReadingEncoder.Format.JSON);
+    private static final int MAX_INFLIGHT = Settings.getInt("PUBLISH_MAX_INFLIGHT", 100);
+    private static final int BUFFER_SIZE = Settings.getInt("PUBLISH_BUFFER_SIZE", 5000);
+    private static final boolean BUFFER_DROP_OLDEST = Settings.getBoolean("PUBLISH_BUFFER_DROP_OLDEST", true);
+    private static final int READING_QOS = Settings.getInt("READING_QOS", 1);
+    private static final int MESSAGE_QOS = Settings.getInt("MESSAGE_QOS", 1);
+    private static final int RECONNECT_DELAY_MS = 2000;
 
     // Initialise Java Swing UI Components
     private JTextField messageField;
     private JButton sendButton;
     private JTextArea logArea;
-    private MqttClient client;
+    private JLabel statusLabel;
+    private MqttAsyncClient client;
+    private MqttConnectOptions connectOptions;
     private String clientId;
+    private byte[] clientIdBytes;
+    private String topic;
+    private final ReadingEncoder encoder = new ReadingEncoder();
+    // Sequence number of the last reading sent; lets subscribers count lost readings
+    private long sequence;
+
+    // Messages published; acknowledged (or written, at QoS 0); published while disconnected and
+    // held in the buffer; of those, delivered after a reconnect; and lost (evicted from a full
+    // buffer, publish or delivery failure, or not connected without a buffer). Published equals
+    // delivered + in flight + buffered now + dropped.
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong buffered = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
 
     // Device coordinates (now instance fields for movement, within -120 to 120)
     private double x = -30 + Math.random() * 80;
@@ -38,6 +73,8 @@ public class SwingPublisher extends JFrame {
 
         add(panel, BorderLayout.NORTH);
         add(new JScrollPane(logArea), BorderLayout.CENTER);
+        statusLabel = new JLabel(" ");
+        add(statusLabel, BorderLayout.SOUTH);
 
         sendButton.addActionListener(e -> publishMessage());
 
@@ -48,16 +85,43 @@ public class SwingPublisher extends JFrame {
                 suffix = java.util.UUID.randomUUID().toString().substring(0, 8);
             }
             clientId = CLIENT_ID_PREFIX + "-" + suffix;
+            clientIdBytes = clientId.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            topic = TOPICS.topicFor(ZONE, clientId);
+
+            client = new MqttAsyncClient(BROKER_URL, clientId, new MemoryPersistence());
+            if (BUFFER_SIZE > 0) {
+                DisconnectedBufferOptions buffer = new DisconnectedBufferOptions();
+                buffer.setBufferEnabled(true);
+                buffer.setBufferSize(BUFFER_SIZE);
+                buffer.setDeleteOldestMessages(BUFFER_DROP_OLDEST);
+                buffer.setPersistBuffer(false);
+                client.setBufferOpts(buffer);
+            }
+            client.setCallback(new MqttCallbackExtended() {
+                @Override
+                public void connectComplete(boolean reconnect, String serverURI) {
+                    if (reconnect) log("Reconnected; flushing " + client.getBufferedMessageCount() + " buffered message(s)");
+                }
 
-            client = new MqttClient(BROKER_URL, clientId, new MemoryPersistence());
+                @Override
+                public void connectionLost(Throwable cause) {
+                    log("Connection lost (" + cause.getMessage() + "); "
+                            + (BUFFER_SIZE > 0 ? "buffering up to " + BUFFER_SIZE + " message(s)" : "readings are dropped") + " until reconnected");
+                }
+
+                @Override
+                public void messageArrived(String topic, MqttMessage message) {}
 
-            MqttConnectOptions options = new MqttConnectOptions();
-            options.setAutomaticReconnect(true);
-            options.setCleanSession(true);
-            options.setConnectionTimeout(10);
+                @Override
+                public void deliveryComplete(IMqttDeliveryToken token) {}
+            });
 
-            client.connect(options);
-            log("Connected to broker as " + clientId);
+            connectOptions = new MqttConnectOptions();
+            connectOptions.setAutomaticReconnect(true);
+            connectOptions.setCleanSession(true);
+            connectOptions.setConnectionTimeout(10);
+            connectOptions.setMaxInflight(MAX_INFLIGHT);
+            connect();
 
             // Start periodic RSSI publishing
             startMockRssiPublisher();
@@ -70,13 +134,80 @@ public class SwingPublisher extends JFrame {
             @Override
             public void windowClosing(java.awt.event.WindowEvent e) {
                 if (client != null && client.isConnected()) {
-                    try { client.disconnect(); } catch (Exception ignored) {}
+                    try { client.disconnect().waitForCompletion(2000); } catch (Exception ignored) {}
                 }
             }
         });
         pack();
         setVisible(true);
     }
+    // Paho only reconnects automatically after a first successful connect, so retry that here
+    private void connect() throws MqttException {
+        client.connect(connectOptions, null, new IMqttActionListener() {
+            @Override
+            public void onSuccess(IMqttToken token) {
+                log("Connected to broker as " + clientId + "; publishing to " + topic);
+            }
+
+            @Override
+            public void onFailure(IMqttToken token, Throwable ex) {
+                log("Error connecting: " + ex.getMessage() + "; retrying in " + RECONNECT_DELAY_MS / 1000 + "s");
+                Timer retry = new Timer(RECONNECT_DELAY_MS, e -> {
+                    try {
+                        connect();
+                    } catch (MqttException again) {
+                        log("Error connecting: " + again.getMessage());
+                    }
+                });
+                retry.setRepeats(false);
+                retry.start();
+            }
+        });
+    }
+
+    // Never blocks: the message is sent, queued behind the in-flight window, or buffered while
+    // disconnected; counters track what becomes of it
+    private boolean publish(byte[] payload, int qos) {
+        published.incrementAndGet();
+        boolean offline = !client.isConnected();
+        if (offline && BUFFER_SIZE > 0 && BUFFER_DROP_OLDEST && client.getBufferedMessageCount() >= BUFFER_SIZE) {
+            // Make room ourselves rather than let Paho discard the oldest message uncounted, so
+            // delivered + in flight + buffered now + dropped always adds up to what was sent
+            try {
+                client.deleteBufferedMessage(0);
+                dropped.incrementAndGet();
+            } catch (IndexOutOfBoundsException ex) {
+                // A reconnect flushed the buffer in the meantime
+            }
+        }
+        try {
+            client.publish(topic, payload, qos, false, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                    delivered.incrementAndGet();
+                    if (offline) flushed.incrementAndGet();
+                }
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable ex) {
+                    dropped.incrementAndGet();
+                }
+            });
+            if (offline) buffered.incrementAndGet();
+            return true;
+        } catch (MqttException ex) {
+            // Not connected without a buffer, buffer full (newest dropped), or in-flight window full
+            dropped.incrementAndGet();
+            return false;
+        }
+    }
+
+    private void updateStatus() {
+        statusLabel.setText(String.format(" %s | published %d | delivered %d | in flight %d | buffered %d (now %d) | flushed %d | dropped %d",
+                client.isConnected() ? "connected" : "disconnected", published.get(), delivered.get(), client.getInFlightMessageCount(),
+                buffered.get(), client.getBufferedMessageCount(), flushed.get(), dropped.get()));
+    }
+
     // Periodically send mock RSSI data as JSON
     private void startMockRssiPublisher() {
         // Use a fixed RSSI value for more stable trilateration
@@ -91,41 +222,50 @@ public class SwingPublisher extends JFrame {
                 y = Math.max(-50, Math.min(50, y));
                 // Add a small random noise to RSSI
                 double rssi = baseRssi + (Math.random() - 0.5) * 1; // -65 to -55
-                String json = String.format(
-                    "{\"deviceId\":\"%s\",\"coordinates\":{\"x\":%.2f,\"y\":%.2f},\"rssi\":%.2f}",
-                    clientId, x, y, rssi
-                );
-                MqttMessage message = new MqttMessage(json.getBytes());
-                message.setQos(1);
-                client.publish(TOPIC, message);
-                log("[RSSI] " + json);
+                encoder.encode(FORMAT, clientIdBytes, x, y, rssi, System.currentTimeMillis(), ++sequence);
+                if (!publish(encoder.toByteArray(), READING_QOS)) {
+                    log("[RSSI] dropped reading " + sequence + (client.isConnected() ? "" : " (not connected)"));
+                } else if (FORMAT == ReadingEncoder.Format.JSON) {
+                    log("[RSSI] " + new String(encoder.buffer(), 0, encoder.length(), java.nio.charset.StandardCharsets.UTF_8));
+                } else {
+                    log(String.format("[RSSI] %d-byte frame: (%.2f, %.2f) rssi %.2f", encoder.length(), x, y, rssi));
+                }
             } catch (Exception ex) {
                 log("Error sending RSSI: " + ex.getMessage());
             }
+            updateStatus();
         });
         timer.start();
     }
 
     private void publishMessage() {
-        try {
-            String text = messageField.getText();
-            if (!text.isEmpty()) {
-                MqttMessage message = new MqttMessage(text.getBytes());
-                message.setQos(1);
-                client.publish(TOPIC, message);
-                log("Published: " + text);
+        String text = messageField.getText();
+        if (!text.isEmpty()) {
+            if (publish(text.getBytes(), MESSAGE_QOS)) {
+                log((client.isConnected() ? "Published: " : "Buffered: ") + text);
                 messageField.setText("");
+            } else {
+                log("Error publishing: dropped (" + (client.isConnected() ? "in-flight window full" : "not connected") + ")");
             }
-        } catch (MqttException ex) {
-            log("Error publishing: " + ex.getMessage());
+            updateStatus();
         }
     }
 
+    // Safe to call from any thread (Paho callbacks log too)
     private void log(String msg) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> log(msg));
+            return;
+        }
         logArea.append(msg + "\n");
     }
 
-    public static void main(String[] args) {
+    // Pass --headless to simulate many devices without a window (see LoadGenerator)
+    public static void main(String[] args) throws Exception {
+        if (java.util.Arrays.asList(args).contains("--headless")) {
+            LoadGenerator.main(args);
+            return;
+        }
         SwingUtilities.invokeLater(SwingPublisher::new);
     }
 }
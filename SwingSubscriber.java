@@ -1,81 +1,97 @@
     // ...existing code...
 import org.eclipse.paho.client.mqttv3.*;
-import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.List;
-import java.util.Map;
-import java.util.HashMap;
 // import org.json.JSONObject;
 
 public class SwingSubscriber extends JFrame {
-    // LogPacket class for expandable log entries
-    private static class LogPacket {
-        String deviceId;
-        double x, y, rssi;
-        String payload;
-        boolean expanded = false;
-        boolean isSimpleMsg = false;
-        String msg;
-        long timestamp;
-        LogPacket(String deviceId, double x, double y, double rssi, String payload) {
-            this.deviceId = deviceId;
-            this.x = x;
-            this.y = y;
-            this.rssi = rssi;
-            this.payload = payload;
-            this.timestamp = System.currentTimeMillis();
-        }
-        LogPacket(String msg) {
-            this.isSimpleMsg = true;
-            this.msg = msg;
-            this.timestamp = System.currentTimeMillis();
+    // Custom renderer for expandable log rows; text is fetched from the model only when painted
+    private static class LogRowRenderer extends JComponent implements ListCellRenderer<LogModel.Row> {
+        private final LogModel model;
+        private LogModel.Row row;
+        private boolean selected;
+        LogRowRenderer(LogModel model) {
+            this.model = model;
+            setOpaque(true);
         }
         @Override
-        public String toString() {
-            if (isSimpleMsg) return msg;
-            if (!expanded) {
-                return String.format("[%s] RSSI: %.2f", deviceId, rssi);
-            } else {
-                java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-                String time = sdf.format(new java.util.Date(timestamp));
-                return String.format(
-                    "[%s]\n  RSSI: %.2f\n  (x=%.2f, y=%.2f)\n  Time: %s\n  JSON: %s",
-                    deviceId, rssi, x, y, time, payload
-                );
-            }
+        public Component getListCellRendererComponent(JList<? extends LogModel.Row> list, LogModel.Row value, int index, boolean isSelected, boolean cellHasFocus) {
+            row = value;
+            selected = isSelected;
+            setFont(list.getFont());
+            return this;
         }
-    }
-
-    // Custom renderer for expandable log packets
-    private static class LogPacketRenderer extends JTextArea implements ListCellRenderer<LogPacket> {
-        public LogPacketRenderer() {
-            setLineWrap(true);
-            setWrapStyleWord(true);
-            setOpaque(true);
+        @Override
+        public Dimension getPreferredSize() {
+            FontMetrics fm = getFontMetrics(getFont());
+            return new Dimension(0, fm.getHeight() * model.lineCount(row) + 2);
         }
         @Override
-        public Component getListCellRendererComponent(JList<? extends LogPacket> list, LogPacket value, int index, boolean isSelected, boolean cellHasFocus) {
-            setText(value.toString());
-            setBackground(isSelected ? Color.LIGHT_GRAY : Color.WHITE);
-            setForeground(Color.BLACK);
-            return this;
+        protected void paintComponent(Graphics g) {
+            g.setColor(selected ? Color.LIGHT_GRAY : Color.WHITE);
+            g.fillRect(0, 0, getWidth(), getHeight());
+            g.setColor(Color.BLACK);
+            FontMetrics fm = g.getFontMetrics();
+            int y = fm.getAscent() + 1;
+            for (String line : model.lines(row)) {
+                g.drawString(line, 2, y);
+                y += fm.getHeight();
+            }
         }
     }
     private static final String BROKER_URL = "tcp://localhost:1883";
     private static final String CLIENT_ID_PREFIX = "SwingSubscriber";
-    private static final String TOPIC = "sensor/data";
+    // How often the EDT drains processed readings (UI_FLUSH_MS)
+    private static final int UI_FLUSH_MS = Settings.getInt("UI_FLUSH_MS", 50);
+    private static final int UI_MAX_BATCH = 2048;
+    // Upper bound on map repaints per second (RENDER_MAX_FPS)
+    private static final int RENDER_MAX_FPS = Settings.getInt("RENDER_MAX_FPS", 30);
+    // Map level of detail: devices sharing a marker cell from this many on are drawn as one
+    // aggregate marker; device labels and lines to the receiver need at least this zoom (pixels
+    // per coordinate unit) and at most this many separately drawn devices in view
+    private static final int RENDER_CLUSTER_MIN = Math.max(2, Settings.getInt("RENDER_CLUSTER_MIN", 6));
+    private static final double RENDER_LABEL_MIN_SCALE = Settings.getDouble("RENDER_LABEL_MIN_SCALE", 1.0);
+    private static final int RENDER_MAX_LABELS = Settings.getInt("RENDER_MAX_LABELS", 100);
+    // How far back from the timeline position the map looks for the latest positions
+    private static final long HISTORY_FRAME_MS = Settings.getLong("HISTORY_FRAME_MS", 5000);
+    private static final int TIMELINE_STEPS = 1000;
 
 
-    private DefaultListModel<LogPacket> logModel;
-    private JList<LogPacket> logList;
-    private MqttClient client;
+    private LogModel logModel;
+    private JList<LogModel.Row> logList;
+    private TrilaterationPanel trilatPanel;
+    private JLabel statusLabel;
+    // Latency and rate summary from the engine's metrics, refreshed once per second
+    private JTextArea statsArea;
+    private long statsUpdatedAt;
     private String clientId;
 
-    // Store latest RSSI and coordinates for each device
-    private final Map<String, DeviceReading> deviceReadings = new HashMap<>();
+    // Ingest, device state and position estimation run in the headless engine; the window only
+    // observes it through uiQueue and its snapshots
+    private final GatewayEngine engine = GatewayEngine.fromSettings();
+    // The log may lose rows under overload, but must never hold back the engine
+    private final ReadingQueue uiQueue = new ReadingQueue(
+        Settings.getInt("INGEST_QUEUE_CAPACITY", 8192), ReadingQueue.Backpressure.DROP_OLDEST, 1);
+
+    // Reused by the EDT when draining uiQueue
+    private final Reading drained = new Reading();
+    private long loggedVersion;
+
+    // Position history (HISTORY_DIR), scrubbed with the timeline under the map. Frames are read
+    // from disk on historyLoader, latest request wins; historyFrame is null while live.
+    private PositionHistory.Reader historyReader;
+    private long historyStart;
+    private JSlider timeline;
+    private JLabel timelineLabel;
+    private PositionHistory.Frame historyFrame;
+    private final java.util.concurrent.atomic.AtomicLong scrubTo = new java.util.concurrent.atomic.AtomicLong(-1);
+    private final java.util.concurrent.ExecutorService historyLoader = java.util.concurrent.Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "history-loader");
+        t.setDaemon(true);
+        return t;
+    });
 
 
 
@@ -83,29 +99,65 @@ public class SwingSubscriber extends JFrame {
         super("MQTT Subscriber (Gateway)");
 
         // UI setup
-        logModel = new DefaultListModel<>();
+        logModel = LogModel.fromSettings();
         logList = new JList<>(logModel);
-        logList.setCellRenderer(new LogPacketRenderer());
+        logList.setCellRenderer(new LogRowRenderer(logModel));
         logList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         logList.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
                 int idx = logList.locationToIndex(e.getPoint());
                 if (idx >= 0) {
-                    LogPacket pkt = logModel.get(idx);
-                    pkt.expanded = !pkt.expanded;
-                    logModel.set(idx, pkt); // trigger repaint
+                    logModel.toggleExpanded(idx); // trigger repaint
                 }
             }
         });
         JScrollPane logScroll = new JScrollPane(logList);
         logScroll.setPreferredSize(new Dimension(350, 300));
-        TrilaterationPanel trilatPanel = new TrilaterationPanel();
-    trilatPanel.setPreferredSize(new Dimension(400, 400));
+        trilatPanel = new TrilaterationPanel();
+        trilatPanel.setPreferredSize(new Dimension(400, 400));
+        JPanel mapPanel = new JPanel(new BorderLayout());
+        mapPanel.add(trilatPanel, BorderLayout.CENTER);
         JPanel mainPanel = new JPanel(new BorderLayout());
         mainPanel.add(logScroll, BorderLayout.CENTER);
-        mainPanel.add(trilatPanel, BorderLayout.EAST);
+        mainPanel.add(mapPanel, BorderLayout.EAST);
         add(mainPanel, BorderLayout.CENTER);
+        statusLabel = new JLabel(" ");
+        statsArea = new JTextArea(4, 40);
+        statsArea.setEditable(false);
+        statsArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        statsArea.setBackground(getBackground());
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(statsArea, BorderLayout.CENTER);
+        southPanel.add(statusLabel, BorderLayout.SOUTH);
+        add(southPanel, BorderLayout.SOUTH);
+
+        engine.setEventListener(this::log);
+        engine.addSink(new GatewaySink() {
+            @Override
+            public void onReading(Reading reading) {
+                uiQueue.offer(reading);
+            }
+
+            @Override
+            public void onSnapshot(PositionSnapshot snapshot) {
+                // Read on demand by the EDT via engine.snapshot()
+            }
+        });
+        try {
+            PositionHistory.Writer history = PositionHistory.Writer.fromSettings();
+            if (history != null) {
+                engine.addSink(history);
+                historyReader = new PositionHistory.Reader(history.dir());
+                long first = historyReader.firstMillis();
+                historyStart = first > 0 ? first : System.currentTimeMillis();
+                mapPanel.add(createTimeline(), BorderLayout.SOUTH);
+            }
+        } catch (java.io.IOException ex) {
+            log("History disabled: " + ex.getMessage());
+        }
+        engine.start();
+        new Timer(UI_FLUSH_MS, e -> flushEngine()).start();
 
         // Connect to broker
         try {
@@ -115,37 +167,15 @@ public class SwingSubscriber extends JFrame {
             }
             clientId = CLIENT_ID_PREFIX + "-" + suffix;
 
-
-            client = new MqttClient(BROKER_URL, clientId, new MemoryPersistence());
-            client.setCallback(new MqttCallback() {
-                @Override
-                public void connectionLost(Throwable cause) {
-                    SwingSubscriber.this.log("Connection lost: " + cause.getMessage());
-                }
-
-                @Override
-                public void messageArrived(String topic, MqttMessage message) {
-                    String payload = new String(message.getPayload());
-                    SwingSubscriber.this.log("Received [" + topic + "]: " + payload);
-                    SwingSubscriber.this.handleRssiMessage(payload);
-                }
-
-                @Override
-                public void deliveryComplete(IMqttDeliveryToken token) {
-                    // Not needed for subscriber
-                }
-            });
-
-            MqttConnectOptions options = new MqttConnectOptions();
-            options.setAutomaticReconnect(true);
-            options.setCleanSession(true);
-            options.setConnectionTimeout(10);
-
-            client.connect(options);
-            client.subscribe(TOPIC, 1);
-            log("Connected as " + clientId + "; Subscribed to " + TOPIC);
-
-        } catch (MqttException ex) {
+            engine.metrics().register(clientId);
+            engine.setCapture(CaptureLog.Writer.fromSettings());
+            // Zones, partitions and shared group to subscribe to, as for HeadlessGateway; a bad
+            // setting is reported like a failed connection
+            java.util.List<String> topics = TopicScheme.fromSettings().filters(
+                Settings.getString("SUBSCRIBE_ZONES", null), Settings.getString("SUBSCRIBE_PARTITIONS", null),
+                Settings.getString("SHARE_GROUP", null));
+            engine.connect(BROKER_URL, clientId, topics);
+        } catch (MqttException | java.io.IOException | IllegalArgumentException ex) {
             log("Error: " + ex.getMessage());
         }
 
@@ -154,174 +184,652 @@ public class SwingSubscriber extends JFrame {
         addWindowListener(new java.awt.event.WindowAdapter() {
             @Override
             public void windowClosing(java.awt.event.WindowEvent e) {
-                if (client != null && client.isConnected()) {
-                    try { client.disconnect(); } catch (Exception ignored) {}
-                }
+                engine.stop();
             }
         });
         pack();
         setVisible(true);
     }
 
-    // Log helper
-    private void logPacket(String deviceId, double x, double y, double rssi, String payload) {
-        logModel.addElement(new LogPacket(deviceId, x, y, rssi, payload));
-        logList.ensureIndexIsVisible(logModel.size() - 1);
+    // Runs on the EDT every UI_FLUSH_MS: one intervalAdded and at most one repaint request per batch
+    private void flushEngine() {
+        long now = System.currentTimeMillis();
+        int appended = 0;
+        String notice;
+        while ((notice = engine.pollNotice()) != null) {
+            logModel.appendText(notice, now);
+            appended++;
+        }
+        while (appended < UI_MAX_BATCH && uiQueue.poll(drained)) {
+            logModel.appendReading(drained, now);
+            appended++;
+        }
+        PositionSnapshot snap = engine.snapshot();
+        if (snap.version != loggedVersion && snap.hasEstimate()) {
+            loggedVersion = snap.version;
+            logModel.appendText(String.format("[Trilateration] Estimated position: (%.2f, %.2f)", snap.estimateX, snap.estimateY), now);
+            appended++;
+        }
+        if (appended > 0) {
+            logModel.endBatch();
+            logList.ensureIndexIsVisible(logModel.getSize() - 1);
+        }
+        trilatPanel.requestRepaint();
+        statusLabel.setText(String.format(" Shards %d | tags %d | queue %d/%d | dropped %d | UI dropped %d | malformed %d | batches %d (avg %.1f)",
+                engine.shardCount(), engine.tagSnapshot().size(), engine.queueDepth(), engine.queueCapacity(), engine.dropped(),
+                uiQueue.dropped(), engine.decodeErrors(), engine.envelopes(), engine.averageBatchSize()));
+        if (now - statsUpdatedAt >= 1000) {
+            statsUpdatedAt = now;
+            statsArea.setText(engine.metrics().getSummary());
+        }
+    }
+
+    // Slider from the start of the history to now; the right end follows the live engine
+    private JPanel createTimeline() {
+        timeline = new JSlider(0, TIMELINE_STEPS, TIMELINE_STEPS);
+        timelineLabel = new JLabel("Live");
+        timeline.addChangeListener(e -> scrub(timeline.getValue()));
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(timeline, BorderLayout.CENTER);
+        panel.add(timelineLabel, BorderLayout.EAST);
+        return panel;
     }
 
-    private void log(String msg) {
-        logModel.addElement(new LogPacket(msg));
-        logList.ensureIndexIsVisible(logModel.size() - 1);
+    private void scrub(int step) {
+        if (step >= TIMELINE_STEPS) {
+            scrubTo.set(-1);
+            historyFrame = null;
+            timelineLabel.setText("Live");
+            trilatPanel.repaint();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long at = historyStart + (now - historyStart) * step / TIMELINE_STEPS;
+        timelineLabel.setText(java.time.LocalTime.ofInstant(java.time.Instant.ofEpochMilli(at), java.time.ZoneId.systemDefault())
+                .withNano(0).toString());
+        scrubTo.set(at);
+        historyLoader.execute(this::loadFrame);
     }
 
-    // Helper class for device readings
-    private static class DeviceReading {
-        double x, y, distance;
-        DeviceReading(double x, double y, double distance) {
-            this.x = x;
-            this.y = y;
-            this.distance = distance;
+    // On historyLoader: reads only the HISTORY_FRAME_MS of records before the requested time
+    private void loadFrame() {
+        long at = scrubTo.getAndSet(-1);
+        if (at < 0) return;
+        try {
+            PositionHistory.Frame frame = historyReader.frameAt(at, HISTORY_FRAME_MS);
+            SwingUtilities.invokeLater(() -> {
+                if (timeline.getValue() >= TIMELINE_STEPS) return;
+                historyFrame = frame;
+                trilatPanel.repaint();
+            });
+        } catch (java.io.IOException ex) {
+            log("History: " + ex.getMessage());
         }
     }
 
-    // Visualization panel for device and estimated positions
+    // Log helper; safe to call from any thread
+    private void log(String msg) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> log(msg));
+            return;
+        }
+        logModel.appendText(msg, System.currentTimeMillis());
+        logModel.endBatch();
+        logList.ensureIndexIsVisible(logModel.getSize() - 1);
+    }
+
+    // Visualization panel for device, estimated and tag positions. Only reads the engine's latest
+    // PositionSnapshot and TagSnapshot (or a history frame's). Drawing is layered so that a frame
+    // costs what changed rather than how many devices there are:
+    //  - the grid is an image, rebuilt only when the view is zoomed, reset or resized;
+    //  - device markers live in a layer split into CELL_PX cells; a new snapshot redraws only the
+    //    cells whose devices moved, appeared or left, and a cell with RENDER_CLUSTER_MIN or more
+    //    devices is drawn as one aggregate marker showing the count;
+    //  - tags have their own layer, redrawn once per tag tick;
+    //  - labels and lines to the receiver are drawn per frame, only when zoomed in to at least
+    //    RENDER_LABEL_MIN_SCALE pixels per unit and with at most RENDER_MAX_LABELS devices in view.
+    // Drag to pan (the layers are shifted, and redrawn once on release), use the wheel to zoom,
+    // double-click to reset. Repaints are throttled to RENDER_MAX_FPS however fast readings arrive.
     private class TrilaterationPanel extends JPanel {
-        @Override
-        protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
-            Graphics2D g2 = (Graphics2D) g;
+        private static final int R = 8; // Node size
+        private static final int TAG_R = 3; // Tag marker size
+        // Tag labels only while few enough tags are in view to read them
+        private static final int MAX_TAG_LABELS = 50;
+        private static final int PAD = 2 * R; // Minimal padding
+        // Initial view, and the extent of the culling indexes
+        private static final double MIN_COORD = -150, MAX_COORD = 150;
+        private static final int INDEX_CELL = 20;
+        // Grid lines at least this far apart; every fifth one labelled
+        private static final int MIN_GRID_PX = 10;
+        // Marker layer cells: at least 2 * R, so a marker only reaches into adjacent cells
+        private static final int CELL_PX = 32;
+        private static final double ZOOM_STEP = 1.25;
+
+        // Last drawn pixel position of a device in the marker layer
+        private static final class Marker {
+            int px, py, cell;
+            long seen;
+            // Coordinate label, and the position it shows in tenths of a unit
+            String coords;
+            long coordsX, coordsY;
+        }
+
+        private final Color gridColor = new Color(230, 230, 230);
+        private final Color lineColor = new Color(150, 150, 150, 100);
+        private final Color tagColor = new Color(230, 120, 0);
+        private final Color clusterColor = new Color(0, 0, 255, 170);
+        private final Stroke dashed = new BasicStroke(1f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{4f, 6f}, 0);
+        private final long minFrameNanos = 1_000_000_000L / Math.max(1, RENDER_MAX_FPS);
+        private final Timer throttle = new Timer(0, e -> repaint());
+        private long lastPaintNanos;
+        private long paintedVersion = -1;
+        private long paintedTagVersion = -1;
+        private Font smallFontBase;
+        private Font smallFont;
+
+        // World rectangle in view, and the one the layers were drawn for; they differ only by a
+        // translation while a drag is in progress
+        private double viewX0 = MIN_COORD, viewY0 = MIN_COORD, viewX1 = MAX_COORD, viewY1 = MAX_COORD;
+        private double layerX0, layerY0, layerX1, layerY1;
+        private boolean layersStale = true;
+        private Point dragFrom;
+
+        private java.awt.image.BufferedImage grid;
+        private java.awt.image.BufferedImage markerLayer;
+        private java.awt.image.BufferedImage tagLayer;
+
+        // Marker layer state: per cell, the snapshot indices of its devices (counting sort
+        // into cellItems from cellStart), and whether it must be redrawn
+        private int cols, rows;
+        private int[] cellStart = new int[0];
+        private int[] cellItems = new int[0];
+        private int[] cellFill = new int[0];
+        private boolean[] dirtyCells = new boolean[0];
+        private boolean[] wasClustered = new boolean[0];
+        private int[] itemCells = new int[0];
+        private final java.util.Map<String, Marker> markers = new java.util.HashMap<>();
+        private Marker[] itemMarkers = new Marker[0];
+        private long markerGeneration;
+        private PositionSnapshot layeredSnap;
+        private TagSnapshot layeredTags;
+
+        // Tag positions indexed for culling under a stable slot per tag id: a new tag table only
+        // moves the tags whose position changed and removes the ones it no longer has, and a
+        // pan or zoom just queries the index
+        private final SpatialGrid tagIndex = new SpatialGrid(MIN_COORD, MIN_COORD, MAX_COORD, MAX_COORD, INDEX_CELL);
+        private final java.util.Map<String, Integer> tagSlots = new java.util.HashMap<>();
+        private String[] slotTagIds = new String[16];
+        private String[] slotLabels = new String[16];
+        private double[] slotXs = new double[16], slotYs = new double[16];
+        private long[] slotSeen = new long[16];
+        private int[] freeSlots = new int[16];
+        private int freeSlotCount, slotHighWater;
+        private long tagGeneration;
+        private TagSnapshot indexedTags;
+        private int visibleTags;
+
+        TrilaterationPanel() {
+            throttle.setRepeats(false);
+            MouseAdapter mouse = new MouseAdapter() {
+                @Override
+                public void mousePressed(MouseEvent e) {
+                    dragFrom = e.getPoint();
+                }
+
+                @Override
+                public void mouseDragged(MouseEvent e) {
+                    if (dragFrom == null) return;
+                    double ux = (viewX1 - viewX0) / Math.max(1, getWidth() - 2 * PAD);
+                    double uy = (viewY1 - viewY0) / Math.max(1, getHeight() - 2 * PAD);
+                    double dx = (e.getX() - dragFrom.x) * ux, dy = (e.getY() - dragFrom.y) * uy;
+                    viewX0 -= dx;
+                    viewX1 -= dx;
+                    viewY0 += dy;
+                    viewY1 += dy;
+                    dragFrom = e.getPoint();
+                    repaint();
+                }
+
+                @Override
+                public void mouseReleased(MouseEvent e) {
+                    dragFrom = null;
+                    layersStale = true;
+                    repaint();
+                }
+
+                @Override
+                public void mouseWheelMoved(MouseWheelEvent e) {
+                    zoom(Math.pow(ZOOM_STEP, e.getPreciseWheelRotation()), e.getX(), e.getY());
+                }
+
+                @Override
+                public void mouseClicked(MouseEvent e) {
+                    if (e.getClickCount() != 2) return;
+                    viewX0 = viewY0 = MIN_COORD;
+                    viewX1 = viewY1 = MAX_COORD;
+                    layersStale = true;
+                    repaint();
+                }
+            };
+            addMouseListener(mouse);
+            addMouseMotionListener(mouse);
+            addMouseWheelListener(mouse);
+        }
+
+        // Called on the EDT whenever new data may be available
+        void requestRepaint() {
+            // A history frame stays on screen until the timeline moves
+            if (historyFrame != null) return;
+            if ((engine.snapshot().version == paintedVersion && engine.tagSnapshot().version == paintedTagVersion)
+                    || throttle.isRunning()) return;
+            long waitNanos = lastPaintNanos + minFrameNanos - System.nanoTime();
+            if (waitNanos <= 0) {
+                repaint();
+            } else {
+                throttle.setInitialDelay((int) Math.max(1, waitNanos / 1_000_000));
+                throttle.restart();
+            }
+        }
+
+        // Scales the view by factor around the world point under pixel (px, py)
+        private void zoom(double factor, int px, int py) {
             int w = getWidth(), h = getHeight();
+            double fx = Math.max(0, Math.min(1, (px - PAD) / (double) Math.max(1, w - 2 * PAD)));
+            double fy = Math.max(0, Math.min(1, (py - PAD) / (double) Math.max(1, h - 2 * PAD)));
+            double cx = viewX0 + fx * (viewX1 - viewX0), cy = viewY1 - fy * (viewY1 - viewY0);
+            double spanX = (viewX1 - viewX0) * factor, spanY = (viewY1 - viewY0) * factor;
+            if (spanX < 1 || spanX > 100_000) return;
+            viewX0 = cx - fx * spanX;
+            viewX1 = viewX0 + spanX;
+            viewY1 = cy + fy * spanY;
+            viewY0 = viewY1 - spanY;
+            layersStale = true;
+            repaint();
+        }
+
+        // Pixel coordinates in the current view
+        private int toX(double x, int w) {
+            return (int)((x - viewX0) / (viewX1 - viewX0) * (w - 2 * PAD)) + PAD;
+        }
+
+        private int toY(double y, int h) {
+            return (int)((viewY1 - y) / (viewY1 - viewY0) * (h - 2 * PAD)) + PAD;
+        }
+
+        // Pixel coordinates in the layers
+        private int layerX(double x, int w) {
+            return (int)((x - layerX0) / (layerX1 - layerX0) * (w - 2 * PAD)) + PAD;
+        }
+
+        private int layerY(double y, int h) {
+            return (int)((layerY1 - y) / (layerY1 - layerY0) * (h - 2 * PAD)) + PAD;
+        }
+
+        private java.awt.image.BufferedImage renderGrid(int w, int h) {
+            java.awt.image.BufferedImage img = new java.awt.image.BufferedImage(w, h, java.awt.image.BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2 = img.createGraphics();
             g2.setColor(Color.WHITE);
             g2.fillRect(0, 0, w, h);
-            int r = 8; // Node size
-            int pad = 2 * r; // Minimal padding
-            Font origFont = g2.getFont();
-            Font smallFont = origFont.deriveFont(origFont.getSize2D() * 0.8f);
-            // Grid settings for -150 to 150
-            double minCoord = -150, maxCoord = 150;
-            int gridStep = 10;
+            g2.setFont(smallFont);
+            // 1, 2 or 5 times a power of ten, so that lines are at least MIN_GRID_PX apart
+            double minStep = MIN_GRID_PX * (layerX1 - layerX0) / Math.max(1, w - 2 * PAD);
+            double step = Math.pow(10, Math.floor(Math.log10(minStep)));
+            if (step * 2 >= minStep) step *= 2;
+            else if (step * 5 >= minStep) step *= 5;
+            else step *= 10;
             // Draw grid lines
-            g2.setColor(new Color(230, 230, 230));
-            for (int i = (int) minCoord; i <= (int) maxCoord; i += gridStep) {
-                int gx = (int)((i - minCoord) / (maxCoord - minCoord) * (w - 2 * pad)) + pad;
-                g2.drawLine(gx, pad, gx, h - pad);
-                int gy = (int)((maxCoord - i) / (maxCoord - minCoord) * (h - 2 * pad)) + pad;
-                g2.drawLine(pad, gy, w - pad, gy);
-                if (i % 50 == 0) {
-                    g2.setFont(smallFont);
+            for (long i = (long) Math.ceil(layerX0 / step); i * step <= layerX1; i++) {
+                int gx = layerX(i * step, w);
+                g2.setColor(gridColor);
+                g2.drawLine(gx, 0, gx, h);
+                if (i % 5 == 0) {
                     g2.setColor(Color.GRAY);
-                    g2.drawString(Integer.toString(i), gx + 2, h - pad + 12);
-                    g2.drawString(Integer.toString(i), 2, gy - 2);
-                    g2.setColor(new Color(230, 230, 230));
+                    g2.drawString(gridLabel(i * step, step), gx + 2, h - PAD + 12);
                 }
             }
-            g2.setFont(origFont);
-            // Draw publishers as squares and collect their positions
-            java.util.List<int[]> pubPoints = new java.util.ArrayList<>();
-            for (Map.Entry<String, DeviceReading> entry : deviceReadings.entrySet()) {
-                DeviceReading dr = entry.getValue();
-                int dx = (int)((dr.x - minCoord) / (maxCoord - minCoord) * (w - 2 * pad)) + pad;
-                int dy = (int)((maxCoord - dr.y) / (maxCoord - minCoord) * (h - 2 * pad)) + pad;
-                pubPoints.add(new int[]{dx, dy});
-                g2.setColor(Color.BLUE);
-                g2.fillRect(dx - r, dy - r, 2 * r, 2 * r);
-                g2.setColor(Color.BLACK);
-                g2.setFont(smallFont);
-                // Show only the suffix (after last '-') as the label
-                String id = entry.getKey();
-                int dashIdx = id.lastIndexOf('-');
-                String label = (dashIdx >= 0 && dashIdx < id.length() - 1) ? id.substring(dashIdx + 1) : id;
-                g2.drawString(label, dx + 10, dy - 16);
-                g2.drawString(String.format("(%.1f,%.1f)", dr.x, dr.y), dx + 10, dy - 2);
-                g2.setFont(origFont);
+            for (long i = (long) Math.ceil(layerY0 / step); i * step <= layerY1; i++) {
+                int gy = layerY(i * step, h);
+                g2.setColor(gridColor);
+                g2.drawLine(0, gy, w, gy);
+                if (i % 5 == 0) {
+                    g2.setColor(Color.GRAY);
+                    g2.drawString(gridLabel(i * step, step), 2, gy - 2);
+                }
             }
-            // Draw estimated receiver position as square and faint dotted lines
-            if (deviceReadings.size() >= 3) {
-                java.util.List<DeviceReading> readings = new java.util.ArrayList<>(deviceReadings.values());
-                if (readings.size() > 3) readings = readings.subList(0, 3);
-                double[] pos = trilaterate(readings.get(0), readings.get(1), readings.get(2));
-                if (!Double.isNaN(pos[0]) && !Double.isNaN(pos[1])) {
-                    int ex = (int)((pos[0] - minCoord) / (maxCoord - minCoord) * (w - 2 * pad)) + pad;
-                    int ey = (int)((maxCoord - pos[1]) / (maxCoord - minCoord) * (h - 2 * pad)) + pad;
-                    // Draw faint dotted lines from publishers to receiver
-                    java.awt.Stroke oldStroke = g2.getStroke();
-                    g2.setColor(new Color(150, 150, 150, 100));
-                    float[] dash = {4f, 6f};
-                    g2.setStroke(new java.awt.BasicStroke(1f, java.awt.BasicStroke.CAP_BUTT, java.awt.BasicStroke.JOIN_BEVEL, 0, dash, 0));
-                    for (int[] pub : pubPoints) {
-                        g2.drawLine(pub[0], pub[1], ex, ey);
+            g2.dispose();
+            return img;
+        }
+
+        private String gridLabel(double v, double step) {
+            return step >= 1 ? Long.toString(Math.round(v)) : String.format("%.1f", v);
+        }
+
+        // Brings the marker layer up to date with snap: places each device in a cell and redraws
+        // only the cells that changed (all of them after a view change)
+        private void updateMarkers(PositionSnapshot snap, int w, int h, boolean full) {
+            if (markerLayer == null || markerLayer.getWidth() != w || markerLayer.getHeight() != h) {
+                markerLayer = new java.awt.image.BufferedImage(w, h, java.awt.image.BufferedImage.TYPE_INT_ARGB);
+                cols = (w + CELL_PX - 1) / CELL_PX;
+                rows = (h + CELL_PX - 1) / CELL_PX;
+                cellStart = new int[cols * rows + 1];
+                cellFill = new int[cols * rows];
+                dirtyCells = new boolean[cols * rows];
+                wasClustered = new boolean[cols * rows];
+                full = true;
+            }
+            if (full) markers.clear();
+            int n = snap.size();
+            if (itemCells.length < n) {
+                itemCells = new int[n];
+                cellItems = new int[n];
+                itemMarkers = new Marker[n];
+            }
+            long generation = ++markerGeneration;
+            java.util.Arrays.fill(cellStart, 0);
+            for (int i = 0; i < n; i++) {
+                int px = layerX(snap.xs[i], w), py = layerY(snap.ys[i], h);
+                // Markers just off the layer still show their edge, from the border cell
+                int cell = -1;
+                if (px > -R && px < w + R && py > -R && py < h + R) {
+                    cell = Math.max(0, Math.min(rows - 1, py / CELL_PX)) * cols + Math.max(0, Math.min(cols - 1, px / CELL_PX));
+                    cellStart[cell + 1]++;
+                }
+                Marker m = markers.get(snap.deviceIds[i]);
+                if (m == null) {
+                    m = new Marker();
+                    m.cell = -1;
+                    markers.put(snap.deviceIds[i], m);
+                }
+                if (m.px != px || m.py != py || m.cell != cell) {
+                    if (m.cell >= 0) markDirty(m.px, m.py);
+                    if (cell >= 0) markDirty(px, py);
+                }
+                m.px = px;
+                m.py = py;
+                m.cell = cell;
+                m.seen = generation;
+                itemCells[i] = cell;
+                itemMarkers[i] = m;
+            }
+            // Devices gone from the snapshot
+            markers.values().removeIf(m -> {
+                if (m.seen == generation) return false;
+                if (m.cell >= 0) markDirty(m.px, m.py);
+                return true;
+            });
+            for (int c = 0; c < cols * rows; c++) cellStart[c + 1] += cellStart[c];
+            // A cell turning into an aggregate marker or back changes what reaches its neighbours
+            for (int c = 0; c < cols * rows; c++) {
+                boolean now = clustered(c);
+                if (now == wasClustered[c]) continue;
+                wasClustered[c] = now;
+                for (int row = Math.max(0, c / cols - 1); row <= Math.min(rows - 1, c / cols + 1); row++) {
+                    for (int col = Math.max(0, c % cols - 1); col <= Math.min(cols - 1, c % cols + 1); col++) {
+                        dirtyCells[row * cols + col] = true;
                     }
-                    g2.setStroke(oldStroke);
-                    // Draw receiver as square
-                    g2.setColor(Color.RED);
-                    g2.fillRect(ex - r, ey - r, 2 * r, 2 * r);
-                    g2.setColor(Color.MAGENTA);
-                    g2.setFont(smallFont);
-                    g2.drawString("Receiver", ex + 10, ey - 16);
-                    g2.drawString(String.format("(%.1f,%.1f)", pos[0], pos[1]), ex + 10, ey - 2);
-                    g2.setFont(origFont);
                 }
             }
+            System.arraycopy(cellStart, 0, cellFill, 0, cols * rows);
+            for (int i = 0; i < n; i++) {
+                if (itemCells[i] >= 0) cellItems[cellFill[itemCells[i]]++] = i;
+            }
+
+            Graphics2D g2 = markerLayer.createGraphics();
+            g2.setFont(smallFont);
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            if (full) {
+                g2.setComposite(AlphaComposite.Clear);
+                g2.fillRect(0, 0, w, h);
+                g2.setComposite(AlphaComposite.SrcOver);
+                for (int c = 0; c < cols * rows; c++) drawCell(g2, c);
+            } else {
+                for (int c = 0; c < cols * rows; c++) {
+                    if (!dirtyCells[c]) continue;
+                    // Clear the cell, then redraw everything that reaches into it
+                    int cx = (c % cols) * CELL_PX, cy = (c / cols) * CELL_PX;
+                    g2.setClip(cx, cy, CELL_PX, CELL_PX);
+                    g2.setComposite(AlphaComposite.Clear);
+                    g2.fillRect(cx, cy, CELL_PX, CELL_PX);
+                    g2.setComposite(AlphaComposite.SrcOver);
+                    for (int row = Math.max(0, c / cols - 1); row <= Math.min(rows - 1, c / cols + 1); row++) {
+                        for (int col = Math.max(0, c % cols - 1); col <= Math.min(cols - 1, c % cols + 1); col++) {
+                            int neighbour = row * cols + col;
+                            // Aggregate markers stay inside their own cell
+                            if (neighbour == c || !clustered(neighbour)) drawCell(g2, neighbour);
+                        }
+                    }
+                }
+            }
+            g2.dispose();
+            java.util.Arrays.fill(dirtyCells, false);
         }
-    }
 
-    // Parse JSON, store device readings, and attempt trilateration
-    private void handleRssiMessage(String payload) {
-        try {
-            String deviceId = SimpleJsonParser.getString(payload, "deviceId");
-            double x = SimpleJsonParser.getCoord(payload, "x");
-            double y = SimpleJsonParser.getCoord(payload, "y");
-            double rssi = SimpleJsonParser.getDouble(payload, "rssi");
-            // Convert RSSI to distance (simple model: d = 10^((A - RSSI)/(10*n)))
-            double A = -40;
-            double n = 2.0;
-            double distance = Math.pow(10, (A - rssi) / (10 * n));
-            deviceReadings.put(deviceId, new DeviceReading(x, y, distance));
-            logPacket(deviceId, x, y, rssi, payload);
-
-            if (deviceReadings.size() >= 3) {
-                List<DeviceReading> readings = new java.util.ArrayList<>(deviceReadings.values());
-                if (readings.size() > 3) {
-                    readings = readings.subList(0, 3);
+        // Every cell a marker at (px, py) covers
+        private void markDirty(int px, int py) {
+            int col0 = Math.max(0, (px - R) / CELL_PX), col1 = Math.min(cols - 1, Math.max(0, px + R) / CELL_PX);
+            int row0 = Math.max(0, (py - R) / CELL_PX), row1 = Math.min(rows - 1, Math.max(0, py + R) / CELL_PX);
+            for (int row = row0; row <= row1; row++) {
+                for (int col = col0; col <= col1; col++) dirtyCells[row * cols + col] = true;
+            }
+        }
+
+        private boolean clustered(int cell) {
+            return cellStart[cell + 1] - cellStart[cell] >= RENDER_CLUSTER_MIN;
+        }
+
+        private void drawCell(Graphics2D g2, int cell) {
+            int from = cellStart[cell], to = cellStart[cell + 1];
+            if (from == to) return;
+            if (!clustered(cell)) {
+                g2.setColor(Color.BLUE);
+                for (int k = from; k < to; k++) {
+                    Marker m = itemMarkers[cellItems[k]];
+                    g2.fillRect(m.px - R, m.py - R, 2 * R, 2 * R);
+                }
+                return;
+            }
+            // One disc at the devices' centroid, kept inside the cell, sized by the count
+            long sx = 0, sy = 0;
+            for (int k = from; k < to; k++) {
+                Marker m = itemMarkers[cellItems[k]];
+                sx += m.px;
+                sy += m.py;
+            }
+            int count = to - from;
+            int r = (int) Math.min(CELL_PX / 2 - 1, R + 2 * Math.log(count / (double) RENDER_CLUSTER_MIN + 1));
+            int x0 = (cell % cols) * CELL_PX, y0 = (cell / cols) * CELL_PX;
+            int cx = (int) Math.max(x0 + r, Math.min(x0 + CELL_PX - r, sx / count));
+            int cy = (int) Math.max(y0 + r, Math.min(y0 + CELL_PX - r, sy / count));
+            g2.setColor(clusterColor);
+            g2.fillOval(cx - r, cy - r, 2 * r, 2 * r);
+            g2.setColor(Color.WHITE);
+            String text = count < 1000 ? Integer.toString(count) : (count / 1000) + "k";
+            FontMetrics fm = g2.getFontMetrics();
+            g2.drawString(text, cx - fm.stringWidth(text) / 2, cy + fm.getAscent() / 2 - 1);
+        }
+
+        // Tags as small dots, labelled only when few are in view
+        private void renderTags(TagSnapshot tags, int w, int h) {
+            if (tagLayer == null || tagLayer.getWidth() != w || tagLayer.getHeight() != h) {
+                tagLayer = new java.awt.image.BufferedImage(w, h, java.awt.image.BufferedImage.TYPE_INT_ARGB);
+            }
+            Graphics2D g2 = tagLayer.createGraphics();
+            g2.setComposite(AlphaComposite.Clear);
+            g2.fillRect(0, 0, w, h);
+            g2.setComposite(AlphaComposite.SrcOver);
+            g2.setFont(smallFont);
+            indexTags(tags);
+            double mx = (layerX1 - layerX0) * TAG_R / Math.max(1, w - 2 * PAD);
+            double my = (layerY1 - layerY0) * TAG_R / Math.max(1, h - 2 * PAD);
+            double x0 = layerX0 - mx, x1 = layerX1 + mx, y0 = layerY0 - my, y1 = layerY1 + my;
+            visibleTags = 0;
+            tagIndex.queryRect(x0, y0, x1, y1, i -> visibleTags++);
+            boolean tagLabels = visibleTags <= MAX_TAG_LABELS;
+            g2.setColor(tagColor);
+            tagIndex.queryRect(x0, y0, x1, y1, s -> {
+                int tx = layerX(slotXs[s], w);
+                int ty = layerY(slotYs[s], h);
+                g2.fillOval(tx - TAG_R, ty - TAG_R, 2 * TAG_R, 2 * TAG_R);
+                if (tagLabels) g2.drawString(slotLabels[s], tx + 5, ty - 4);
+            });
+            g2.dispose();
+        }
+
+        // Brings the index in line with a tag table: new and moved tags are updated, and tags the
+        // table no longer has (evicted, or absent from a history frame) are removed
+        private void indexTags(TagSnapshot tags) {
+            if (tags == indexedTags) return;
+            indexedTags = tags;
+            long generation = ++tagGeneration;
+            for (int i = 0; i < tags.size(); i++) {
+                Integer known = tagSlots.get(tags.tagIds[i]);
+                int s;
+                if (known == null) {
+                    s = allocateTagSlot();
+                    tagSlots.put(tags.tagIds[i], s);
+                    slotTagIds[s] = tags.tagIds[i];
+                    slotLabels[s] = PositionSnapshot.labelFor(tags.tagIds[i]);
+                } else {
+                    s = known;
+                }
+                if (known == null || slotXs[s] != tags.xs[i] || slotYs[s] != tags.ys[i]) {
+                    slotXs[s] = tags.xs[i];
+                    slotYs[s] = tags.ys[i];
+                    tagIndex.update(s, slotXs[s], slotYs[s]);
+                }
+                slotSeen[s] = generation;
+            }
+            // Every tag in the table has a slot, so extra slots mean some tags are gone
+            if (tagSlots.size() == tags.size()) return;
+            for (int s = 0; s < slotHighWater; s++) {
+                if (slotTagIds[s] == null || slotSeen[s] == generation) continue;
+                tagIndex.remove(s);
+                tagSlots.remove(slotTagIds[s]);
+                slotTagIds[s] = null;
+                slotLabels[s] = null;
+                freeSlots[freeSlotCount++] = s;
+            }
+        }
+
+        private int allocateTagSlot() {
+            if (freeSlotCount > 0) return freeSlots[--freeSlotCount];
+            if (slotHighWater == slotTagIds.length) {
+                int cap = slotHighWater * 2;
+                slotTagIds = java.util.Arrays.copyOf(slotTagIds, cap);
+                slotLabels = java.util.Arrays.copyOf(slotLabels, cap);
+                slotXs = java.util.Arrays.copyOf(slotXs, cap);
+                slotYs = java.util.Arrays.copyOf(slotYs, cap);
+                slotSeen = java.util.Arrays.copyOf(slotSeen, cap);
+                freeSlots = java.util.Arrays.copyOf(freeSlots, cap);
+            }
+            return slotHighWater++;
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Graphics2D g2 = (Graphics2D) g;
+            int w = getWidth(), h = getHeight();
+            if (w <= 0 || h <= 0) return;
+            PositionHistory.Frame frame = historyFrame;
+            PositionSnapshot snap = frame != null ? frame.anchors : engine.snapshot();
+            TagSnapshot tags = frame != null ? frame.tags : engine.tagSnapshot();
+            paintedVersion = snap.version;
+            paintedTagVersion = tags.version;
+            lastPaintNanos = System.nanoTime();
+            Font origFont = g2.getFont();
+            if (origFont != smallFontBase) {
+                smallFontBase = origFont;
+                smallFont = origFont.deriveFont(origFont.getSize2D() * 0.8f);
+                layersStale = true;
+            }
+            // Layers are redrawn for a new view only once a drag is over
+            boolean resized = grid == null || grid.getWidth() != w || grid.getHeight() != h;
+            if (resized || (layersStale && dragFrom == null)) {
+                layerX0 = viewX0;
+                layerY0 = viewY0;
+                layerX1 = viewX1;
+                layerY1 = viewY1;
+                grid = renderGrid(w, h);
+                updateMarkers(snap, w, h, true);
+                renderTags(tags, w, h);
+                layeredSnap = snap;
+                layeredTags = tags;
+                layersStale = false;
+            }
+            if (layeredSnap != snap) {
+                updateMarkers(snap, w, h, false);
+                layeredSnap = snap;
+            }
+            if (layeredTags != tags) {
+                renderTags(tags, w, h);
+                layeredTags = tags;
+            }
+            // Offset of the layers while dragging
+            int ox = toX(layerX0, w) - PAD, oy = toY(layerY1, h) - PAD;
+            if (ox != 0 || oy != 0) {
+                g2.setColor(Color.WHITE);
+                g2.fillRect(0, 0, w, h);
+            }
+            g2.drawImage(grid, ox, oy, null);
+            g2.drawImage(markerLayer, ox, oy, null);
+            g2.drawImage(tagLayer, ox, oy, null);
+
+            // Level of detail: labels and lines only when zoomed in and few devices are in view
+            g2.setFont(smallFont);
+            double scale = (w - 2 * PAD) / (viewX1 - viewX0);
+            int labelled = 0;
+            for (int c = 0; c < cols * rows; c++) {
+                if (!clustered(c)) labelled += cellStart[c + 1] - cellStart[c];
+            }
+            boolean details = scale >= RENDER_LABEL_MIN_SCALE && labelled <= RENDER_MAX_LABELS;
+            if (details) {
+                g2.setColor(Color.BLACK);
+                for (int c = 0; c < cols * rows; c++) {
+                    if (clustered(c)) continue;
+                    for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                        int i = cellItems[k];
+                        Marker m = itemMarkers[i];
+                        // Formatted again only when the shown value changes; moves under a pixel count too
+                        long tx = Math.round(snap.xs[i] * 10), ty = Math.round(snap.ys[i] * 10);
+                        if (m.coords == null || tx != m.coordsX || ty != m.coordsY) {
+                            m.coords = String.format("(%.1f,%.1f)", snap.xs[i], snap.ys[i]);
+                            m.coordsX = tx;
+                            m.coordsY = ty;
+                        }
+                        g2.drawString(snap.labels[i], m.px + ox + 10, m.py + oy - 16);
+                        g2.drawString(m.coords, m.px + ox + 10, m.py + oy - 2);
+                    }
                 }
-                double[] pos = trilaterate(readings.get(0), readings.get(1), readings.get(2));
-                log(String.format("[Trilateration] Estimated position: (%.2f, %.2f)", pos[0], pos[1]));
-                // Repaint visualization
-                for (Component c : getContentPane().getComponents()) {
-                    for (Component cc : ((JPanel)c).getComponents()) {
-                        if (cc instanceof TrilaterationPanel) {
-                            cc.repaint();
+            }
+            // Draw estimated receiver position as square and faint dotted lines
+            if (snap.hasEstimate()) {
+                int ex = toX(snap.estimateX, w);
+                int ey = toY(snap.estimateY, h);
+                if (details) {
+                    // Draw faint dotted lines from the publishers in view to receiver
+                    Stroke oldStroke = g2.getStroke();
+                    g2.setColor(lineColor);
+                    g2.setStroke(dashed);
+                    for (int c = 0; c < cols * rows; c++) {
+                        if (clustered(c)) continue;
+                        for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                            Marker m = itemMarkers[cellItems[k]];
+                            g2.drawLine(m.px + ox, m.py + oy, ex, ey);
                         }
                     }
+                    g2.setStroke(oldStroke);
                 }
+                // Draw receiver as square
+                g2.setColor(Color.RED);
+                g2.fillRect(ex - R, ey - R, 2 * R, 2 * R);
+                g2.setColor(Color.MAGENTA);
+                g2.drawString("Receiver", ex + 10, ey - 16);
+                g2.drawString(String.format("(%.1f,%.1f)", snap.estimateX, snap.estimateY), ex + 10, ey - 2);
             }
-        } catch (Exception ex) {
-            log("Error parsing RSSI message: " + ex.getMessage());
+            g2.setFont(origFont);
         }
     }
 
-    // Trilateration for 2D (three circles)
-    private double[] trilaterate(DeviceReading d1, DeviceReading d2, DeviceReading d3) {
-        double x1 = d1.x, y1 = d1.y, r1 = d1.distance;
-        double x2 = d2.x, y2 = d2.y, r2 = d2.distance;
-        double x3 = d3.x, y3 = d3.y, r3 = d3.distance;
-
-        double A = 2 * (x2 - x1);
-        double B = 2 * (y2 - y1);
-        double C = r1 * r1 - r2 * r2 - x1 * x1 + x2 * x2 - y1 * y1 + y2 * y2;
-        double D = 2 * (x3 - x2);
-        double E = 2 * (y3 - y2);
-        double F = r2 * r2 - r3 * r3 - x2 * x2 + x3 * x3 - y2 * y2 + y3 * y3;
-
-        double denominator = (A * E - B * D);
-        if (Math.abs(denominator) < 1e-6) {
-            return new double[]{Double.NaN, Double.NaN}; // Degenerate case
-        }
-        double x = (C * E - F * B) / denominator;
-        double y = (A * F - D * C) / denominator;
-        return new double[]{x, y};
-    }
-
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> new SwingSubscriber());
     }
@@ -0,0 +1,326 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+// Positions for many tags at once. Readings that name a tag are grouped by tag into partitions
+// (by tag hash); per tag a partition keeps the latest distance from up to maxAnchors anchors in
+// flat columns (tag * maxAnchors + j), so a reading only overwrites its anchor's entry and marks
+// the tag dirty. tick() then solves every dirty tag, all partitions in parallel on a
+// ForkJoinPool with one solver and scratch AnchorSet per partition, and builds the new position
+// table. Anchor entries older than readingTtlMillis are left out of a solve, and tags silent for
+// tagTtlMillis are evicted.
+//
+// record() may be called from any thread: each partition has its own lock, held for a few field
+// writes. The tick holds it only to take the dirty tags with a copy of their anchors and to
+// store the fixes; the solves in between run unlocked, so shard threads rarely meet each other
+// or the tick. tick() runs on one thread at a time.
+public class TagEngine {
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+    // Several partitions per worker keep the parallel solve balanced when tags cluster
+    public static final int DEFAULT_PARTITIONS = DEFAULT_THREADS * 4;
+
+    private final class Partition {
+        // Tag index, last-seen time and TTL sweep; the single history entry holds the last fix
+        final DeviceStore tags;
+        String[] anchorIds;
+        double[] anchorXs, anchorYs, anchorDistances;
+        long[] anchorTimes;
+        int[] anchorCounts = new int[16];
+        // Anchors used by the last fix, and the tick that computed it
+        int[] fixAnchors = new int[16];
+        long[] fixTicks = new long[16];
+        // Decode time of the oldest reading not yet in a fix; 0 while the tag is clean
+        long[] dirtySince = new long[16];
+        int[] dirtyList = new int[16];
+        int dirtyCount;
+        int positioned;
+        int evicted;
+
+        // Shared by every tag in the partition, so the solver must keep nothing between solves
+        final AnchorSet local = new AnchorSet();
+        final PositionSolver solver = solvers.get();
+        final double[] out = new double[2];
+
+        Partition() {
+            tags = new DeviceStore(1, tagTtlMillis);
+            anchorIds = new String[16 * maxAnchors];
+            anchorXs = new double[16 * maxAnchors];
+            anchorYs = new double[16 * maxAnchors];
+            anchorDistances = new double[16 * maxAnchors];
+            anchorTimes = new long[16 * maxAnchors];
+        }
+
+        synchronized void record(Reading r, long now) {
+            int t = tags.index(r.tagId, now);
+            ensureCapacity(t + 1);
+            int base = t * maxAnchors, n = anchorCounts[t];
+            int j = 0;
+            while (j < n && !anchorIds[base + j].equals(r.deviceId)) j++;
+            if (j == n) {
+                if (n < maxAnchors) {
+                    anchorCounts[t] = n + 1;
+                } else {
+                    // Full: the anchor heard least recently makes room
+                    j = 0;
+                    for (int k = 1; k < n; k++) {
+                        if (anchorTimes[base + k] < anchorTimes[base + j]) j = k;
+                    }
+                }
+                anchorIds[base + j] = r.deviceId;
+            }
+            anchorXs[base + j] = r.x;
+            anchorYs[base + j] = r.y;
+            anchorDistances[base + j] = r.distance;
+            anchorTimes[base + j] = now;
+            if (dirtySince[t] == 0) {
+                dirtySince[t] = r.decodedAtNanos != 0 ? r.decodedAtNanos : now;
+                if (dirtyCount == dirtyList.length) dirtyList = Arrays.copyOf(dirtyList, dirtyCount * 2);
+                dirtyList[dirtyCount++] = t;
+            }
+        }
+
+        // Tick thread only: the dirty tags taken this tick and a copy of their fresh anchors
+        // (i * maxAnchors + j), so the solves run without the lock
+        int[] batchTags = new int[16];
+        String[] batchIds = new String[16];
+        long[] batchSince = new long[16];
+        int[] batchCounts = new int[16];
+        double[] batchXs = new double[16 * maxAnchors];
+        double[] batchYs = new double[16 * maxAnchors];
+        double[] batchDistances = new double[16 * maxAnchors];
+        double[] fixXs = new double[16], fixYs = new double[16];
+        boolean[] fixed = new boolean[16];
+
+        int solveDirty(long now, long tick) {
+            int n = takeDirty(now);
+            // A tag without three fresh anchors keeps its previous fix
+            for (int i = 0; i < n; i++) {
+                fixed[i] = false;
+                if (batchCounts[i] < 3) continue;
+                local.clear();
+                int base = i * maxAnchors;
+                for (int j = 0; j < batchCounts[i]; j++) {
+                    local.update(j, batchXs[base + j], batchYs[base + j], batchDistances[base + j]);
+                }
+                if (!solver.solve(local, out)) continue;
+                fixed[i] = true;
+                fixXs[i] = out[0];
+                fixYs[i] = out[1];
+            }
+            return storeFixes(n, now, tick);
+        }
+
+        // Swaps out the dirty list, sweeps evictions and copies each dirty tag's fresh anchors
+        private synchronized int takeDirty(long now) {
+            evicted = tags.sweepIfDue(now, this::evict);
+            int[] taken = dirtyList;
+            int count = dirtyCount;
+            dirtyList = batchTags;
+            dirtyCount = 0;
+            batchTags = taken;
+            ensureBatchCapacity(count);
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                int t = taken[i];
+                // Evicted since it was marked (and not reused)
+                if (dirtySince[t] == 0) continue;
+                batchTags[n] = t;
+                batchIds[n] = tags.id(t);
+                batchSince[n] = dirtySince[t];
+                dirtySince[t] = 0;
+                int from = t * maxAnchors, to = n * maxAnchors, k = 0;
+                for (int j = 0; j < anchorCounts[t]; j++) {
+                    if (now - anchorTimes[from + j] > readingTtlNanos) continue;
+                    batchXs[to + k] = anchorXs[from + j];
+                    batchYs[to + k] = anchorYs[from + j];
+                    batchDistances[to + k] = anchorDistances[from + j];
+                    k++;
+                }
+                batchCounts[n++] = k;
+            }
+            return n;
+        }
+
+        private synchronized int storeFixes(int n, long now, long tick) {
+            int solved = 0;
+            for (int i = 0; i < n; i++) {
+                if (!fixed[i]) continue;
+                int t = batchTags[i];
+                // Only the sweep in takeDirty() evicts, but a slot must still name the same tag
+                if (!batchIds[i].equals(tags.id(t))) continue;
+                if (tags.historyCount(t) == 0) positioned++;
+                tags.record(t, fixXs[i], fixYs[i], Double.NaN, now);
+                fixAnchors[t] = batchCounts[i];
+                fixTicks[t] = tick;
+                solved++;
+                readingToFix.recordNanos(System.nanoTime() - batchSince[i]);
+            }
+            return solved;
+        }
+
+        private void ensureBatchCapacity(int n) {
+            if (n <= batchIds.length) return;
+            int cap = Math.max(n, batchIds.length * 2);
+            batchIds = new String[cap];
+            batchSince = new long[cap];
+            batchCounts = new int[cap];
+            batchXs = new double[cap * maxAnchors];
+            batchYs = new double[cap * maxAnchors];
+            batchDistances = new double[cap * maxAnchors];
+            fixXs = new double[cap];
+            fixYs = new double[cap];
+            fixed = new boolean[cap];
+        }
+
+        private void evict(int t) {
+            if (tags.historyCount(t) > 0) positioned--;
+            anchorCounts[t] = 0;
+            dirtySince[t] = 0;
+            int base = t * maxAnchors;
+            Arrays.fill(anchorIds, base, base + maxAnchors, null);
+        }
+
+        // Copies every tag with a fix into the table from offset on; returns the next offset
+        synchronized int fill(TagSnapshot table, int offset, long tick) {
+            for (int t = 0; t < tags.highWater() && offset < table.size(); t++) {
+                if (tags.id(t) == null || tags.historyCount(t) == 0) continue;
+                table.tagIds[offset] = tags.id(t);
+                table.xs[offset] = tags.x(t, 0);
+                table.ys[offset] = tags.y(t, 0);
+                table.anchors[offset] = fixAnchors[t];
+                table.updated[offset] = fixTicks[t] == tick;
+                offset++;
+            }
+            return offset;
+        }
+
+        private void ensureCapacity(int n) {
+            if (n <= anchorCounts.length) return;
+            int cap = Math.max(n, anchorCounts.length * 2);
+            anchorCounts = Arrays.copyOf(anchorCounts, cap);
+            fixAnchors = Arrays.copyOf(fixAnchors, cap);
+            fixTicks = Arrays.copyOf(fixTicks, cap);
+            dirtySince = Arrays.copyOf(dirtySince, cap);
+            anchorIds = Arrays.copyOf(anchorIds, cap * maxAnchors);
+            anchorXs = Arrays.copyOf(anchorXs, cap * maxAnchors);
+            anchorYs = Arrays.copyOf(anchorYs, cap * maxAnchors);
+            anchorDistances = Arrays.copyOf(anchorDistances, cap * maxAnchors);
+            anchorTimes = Arrays.copyOf(anchorTimes, cap * maxAnchors);
+        }
+    }
+
+    private final int maxAnchors;
+    private final long readingTtlNanos;
+    private final long tagTtlMillis;
+    private final long tickMillis;
+    private final Supplier<PositionSolver> solvers;
+    private final Partition[] partitions;
+    private final int[] solvedBy;
+    private final int threads;
+    // Created by the first tick, so a gateway that never sees a tag starts no workers
+    private volatile ForkJoinPool pool;
+    private volatile boolean closed;
+    private final LatencyHistogram readingToFix = new LatencyHistogram();
+    private final LatencyHistogram tickTime = new LatencyHistogram();
+    private final AtomicLong solvedTotal = new AtomicLong();
+    private long ticks;
+    private TagSnapshot last = TagSnapshot.EMPTY;
+
+    // Tags are solved every tickMillis over the maxAnchors most recent anchors heard within
+    // readingTtlMillis; tags silent for tagTtlMillis are dropped (0 keeps them)
+    public TagEngine(int partitions, int threads, int maxAnchors, long readingTtlMillis, long tagTtlMillis,
+                     long tickMillis, Supplier<PositionSolver> solvers) {
+        this.maxAnchors = Math.max(3, maxAnchors);
+        this.readingTtlNanos = Math.max(1, readingTtlMillis) * 1_000_000;
+        this.tagTtlMillis = tagTtlMillis;
+        this.tickMillis = Math.max(1, tickMillis);
+        this.solvers = solvers;
+        this.partitions = new Partition[Math.max(1, partitions)];
+        for (int i = 0; i < this.partitions.length; i++) this.partitions[i] = new Partition();
+        solvedBy = new int[this.partitions.length];
+        this.threads = Math.max(1, threads);
+    }
+
+    // Configured from TAG_PARTITIONS, TAG_SOLVER_THREADS, TAG_MAX_ANCHORS (default 8),
+    // TAG_READING_TTL_MS (2000), TAG_TTL_MS (30000) and TAG_TICK_MS (100), solving with the
+    // POSITION_SOLVER settings; SOLVER_NEAREST_K does not apply, a tag only has maxAnchors anchors
+    public static TagEngine fromSettings() {
+        return new TagEngine(
+            Settings.getInt("TAG_PARTITIONS", DEFAULT_PARTITIONS),
+            Settings.getInt("TAG_SOLVER_THREADS", DEFAULT_THREADS),
+            Settings.getInt("TAG_MAX_ANCHORS", 8),
+            Settings.getLong("TAG_READING_TTL_MS", 2_000),
+            Settings.getLong("TAG_TTL_MS", 30_000),
+            Settings.getLong("TAG_TICK_MS", 100),
+            PositionSolver::statelessFromSettings);
+    }
+
+    public long tickMillis() {
+        return tickMillis;
+    }
+
+    // Records the reading's distance (already computed) from its anchor to its tag
+    public void record(Reading r, long nowNanos) {
+        int h = r.tagId.hashCode();
+        partitions[Math.floorMod(h ^ (h >>> 16), partitions.length)].record(r, nowNanos);
+    }
+
+    // Solves every tag that received readings since the last tick and returns the new position
+    // table, or the previous one unchanged if nothing was solved or evicted
+    public TagSnapshot tick() {
+        if (closed) return last;
+        if (pool == null) pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        long tick = ++ticks;
+        pool.submit(() -> IntStream.range(0, partitions.length).parallel()
+                .forEach(i -> solvedBy[i] = partitions[i].solveDirty(start, tick))).join();
+        int solved = 0, evicted = 0, total = 0;
+        int[] offsets = new int[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            solved += solvedBy[i];
+            evicted += partitions[i].evicted;
+            offsets[i] = total;
+            // Only the tick thread changes positioned, so the counts hold until fill()
+            total += partitions[i].positioned;
+        }
+        if (solved == 0 && evicted == 0) return last;
+        TagSnapshot table = new TagSnapshot(tick, new String[total], new double[total], new double[total],
+                new int[total], new boolean[total], solved, 0);
+        pool.submit(() -> IntStream.range(0, partitions.length).parallel()
+                .forEach(i -> partitions[i].fill(table, offsets[i], tick))).join();
+        long elapsed = System.nanoTime() - start;
+        tickTime.recordNanos(elapsed);
+        solvedTotal.addAndGet(solved);
+        last = new TagSnapshot(tick, table.tagIds, table.xs, table.ys, table.anchors, table.updated, solved, elapsed);
+        return last;
+    }
+
+    // Live tags, with or without a fix; safe to read from any thread
+    public int size() {
+        int n = 0;
+        for (Partition p : partitions) n += p.tags.size();
+        return n;
+    }
+
+    public long solved() {
+        return solvedTotal.get();
+    }
+
+    // First reading after a fix to the next fix that includes it
+    public LatencyHistogram readingToFix() {
+        return readingToFix;
+    }
+
+    // Wall time of ticks that solved anything
+    public LatencyHistogram tickTime() {
+        return tickTime;
+    }
+
+    public void close() {
+        closed = true;
+        ForkJoinPool p = pool;
+        if (p != null) p.shutdown();
+    }
+}
@@ -0,0 +1,34 @@
+// Immutable position table of every tracked tag with a fix, produced by TagEngine once per tick
+// and swapped in atomically like PositionSnapshot. Arrays are owned by the snapshot; never
+// modify them.
+public final class TagSnapshot {
+    public static final TagSnapshot EMPTY =
+        new TagSnapshot(0, new String[0], new double[0], new double[0], new int[0], new boolean[0], 0, 0);
+
+    public final long version;
+    public final String[] tagIds;
+    public final double[] xs, ys;
+    // Anchors the fix was computed from
+    public final int[] anchors;
+    // True for tags whose position was recomputed by this tick
+    public final boolean[] updated;
+    // Tags solved and time spent by the tick that produced this snapshot
+    public final int solved;
+    public final long tickNanos;
+
+    public TagSnapshot(long version, String[] tagIds, double[] xs, double[] ys, int[] anchors,
+                       boolean[] updated, int solved, long tickNanos) {
+        this.version = version;
+        this.tagIds = tagIds;
+        this.xs = xs;
+        this.ys = ys;
+        this.anchors = anchors;
+        this.updated = updated;
+        this.solved = solved;
+        this.tickNanos = tickNanos;
+    }
+
+    public int size() {
+        return tagIds.length;
+    }
+}
@@ -0,0 +1,138 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Topic layout shared by publishers and gateways, from TOPIC_TEMPLATE:
+//
+//   sensor/data                                everything on one topic (the default)
+//   sensor/data/{zone}/{deviceId}              one topic per zone and device
+//   sensor/data/{zone}/{partition}/{deviceId}  plus a partition, hash(deviceId) mod TOPIC_PARTITIONS
+//
+// Publishers fill in the placeholders. Gateways subscribe to the zones and partitions they own,
+// the other levels becoming '+', so adding gateways divides the traffic instead of copying it:
+// either by owning disjoint partitions, or by joining one shared subscription
+// ($share/<group>/<filter>) whose broker hands each topic to one member. Either way a device's
+// readings all travel on one topic, which keeps them in order.
+public final class TopicScheme {
+    public static final String ZONE = "{zone}";
+    public static final String PARTITION = "{partition}";
+    public static final String DEVICE_ID = "{deviceId}";
+    public static final String DEFAULT_ZONE = "z0";
+
+    private final String template;
+    private final int partitions;
+
+    public TopicScheme(String template, int partitions) {
+        this.template = template;
+        this.partitions = Math.max(1, partitions);
+    }
+
+    public static TopicScheme fromSettings() {
+        return new TopicScheme(Settings.getString("TOPIC_TEMPLATE", "sensor/data"), Settings.getInt("TOPIC_PARTITIONS", 16));
+    }
+
+    public String template() {
+        return template;
+    }
+
+    public int partitions() {
+        return partitions;
+    }
+
+    // Stable across JVMs (String.hashCode is specified), so publishers and gateways agree
+    public int partitionOf(String deviceId) {
+        int h = deviceId.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), partitions);
+    }
+
+    public String topicFor(String zone, String deviceId) {
+        return fill(zone, Integer.toString(partitionOf(deviceId)), deviceId);
+    }
+
+    // Topic for a batch envelope from a device's publisher: the device's zone and partition, with
+    // the partition standing in for the device id, so envelopes spread over gateways like single
+    // readings do and a device's readings still share one topic
+    public String batchTopicFor(String zone, String deviceId) {
+        int partition = partitionOf(deviceId);
+        return fill(zone, Integer.toString(partition), "p" + partition);
+    }
+
+    // Filters for the given zones (null or empty: all) and partitions (null: all), as shared
+    // subscriptions when shareGroup is set. A template without {zone} ignores the zones; owning
+    // no partitions, or partitions the template has no level for, is an error rather than '+'.
+    public List<String> filters(List<String> zones, int[] ownedPartitions, String shareGroup) {
+        List<String> zoneLevels = template.contains(ZONE) && zones != null && !zones.isEmpty() ? zones : List.of("+");
+        List<String> partitionLevels = new ArrayList<>();
+        if (ownedPartitions == null) {
+            partitionLevels.add("+");
+        } else if (ownedPartitions.length == 0) {
+            throw new IllegalArgumentException("no partitions owned");
+        } else if (!template.contains(PARTITION)) {
+            throw new IllegalArgumentException("partitions given but topic template has no " + PARTITION + ": " + template);
+        } else {
+            for (int p : ownedPartitions) partitionLevels.add(Integer.toString(p));
+        }
+        String prefix = shareGroup == null || shareGroup.isBlank() ? "" : "$share/" + shareGroup + "/";
+        List<String> filters = new ArrayList<>();
+        for (String zone : zoneLevels) {
+            for (String partition : partitionLevels) {
+                String filter = prefix + fill(zone, partition, "+");
+                if (!filters.contains(filter)) filters.add(filter);
+            }
+        }
+        return filters;
+    }
+
+    // Same, from option strings: zones "z1,z2"; partitions "0-3,8", or "i/N" for the share of
+    // gateway i (from 0) among N, i.e. every partition p with p mod N == i
+    public List<String> filters(String zones, String partitionSpec, String shareGroup) {
+        return filters(parseList(zones), parsePartitions(partitionSpec), shareGroup);
+    }
+
+    // Null for a blank spec (all partitions); a malformed spec, or one naming partitions outside
+    // 0..TOPIC_PARTITIONS-1, throws IllegalArgumentException quoting it
+    public int[] parsePartitions(String spec) {
+        if (spec == null || spec.isBlank()) return null;
+        spec = spec.trim();
+        List<Integer> owned = new ArrayList<>();
+        try {
+            int slash = spec.indexOf('/');
+            if (slash > 0) {
+                int index = Integer.parseInt(spec.substring(0, slash).trim());
+                int count = Integer.parseInt(spec.substring(slash + 1).trim());
+                if (count <= 0 || index < 0 || index >= count) throw badPartitions(spec, "need 0 <= i < N");
+                for (int p = index; p < partitions; p += count) owned.add(p);
+            } else {
+                for (String part : parseList(spec)) {
+                    int dash = part.indexOf('-');
+                    int from = Integer.parseInt(dash > 0 ? part.substring(0, dash).trim() : part);
+                    int to = dash > 0 ? Integer.parseInt(part.substring(dash + 1).trim()) : from;
+                    if (from < 0 || to < from || to >= partitions) {
+                        throw badPartitions(spec, "ranges must lie within 0-" + (partitions - 1));
+                    }
+                    for (int p = from; p <= to; p++) owned.add(p);
+                }
+            }
+        } catch (NumberFormatException ex) {
+            throw badPartitions(spec, "expected \"0-3,8\" or \"i/N\"");
+        }
+        if (owned.isEmpty()) throw badPartitions(spec, "owns no partition of " + partitions);
+        return owned.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static IllegalArgumentException badPartitions(String spec, String reason) {
+        return new IllegalArgumentException("bad partition spec '" + spec + "': " + reason);
+    }
+
+    public static List<String> parseList(String csv) {
+        List<String> items = new ArrayList<>();
+        if (csv == null) return items;
+        for (String item : csv.split(",")) {
+            if (!item.isBlank()) items.add(item.trim());
+        }
+        return items;
+    }
+
+    private String fill(String zone, String partition, String deviceId) {
+        return template.replace(ZONE, zone).replace(PARTITION, partition).replace(DEVICE_ID, deviceId);
+    }
+}
@@ -0,0 +1,56 @@
+// Closed-form solution of three circles. Used directly when exactly three anchors are known,
+// and by LeastSquaresSolver as the fallback for degenerate geometry. With more than three
+// anchors it uses the three with the highest weight (the closest ones).
+public class TrilaterationSolver implements PositionSolver {
+    private final int[] picked = new int[3];
+
+    @Override
+    public boolean solve(AnchorSet anchors, double[] out) {
+        if (!pickStrongest(anchors)) {
+            out[0] = out[1] = Double.NaN;
+            return false;
+        }
+        int a = picked[0], b = picked[1], c = picked[2];
+        trilaterate(anchors.x(a), anchors.y(a), anchors.distance(a),
+                anchors.x(b), anchors.y(b), anchors.distance(b),
+                anchors.x(c), anchors.y(c), anchors.distance(c), out);
+        return !Double.isNaN(out[0]);
+    }
+
+    private boolean pickStrongest(AnchorSet anchors) {
+        if (anchors.size() < 3) return false;
+        picked[0] = picked[1] = picked[2] = -1;
+        for (int i = 0; i < anchors.highWater(); i++) {
+            if (!anchors.isActive(i)) continue;
+            double w = anchors.weight(i);
+            for (int k = 0; k < 3; k++) {
+                if (picked[k] < 0 || w > anchors.weight(picked[k])) {
+                    for (int m = 2; m > k; m--) picked[m] = picked[m - 1];
+                    picked[k] = i;
+                    break;
+                }
+            }
+        }
+        return picked[2] >= 0;
+    }
+
+    // Trilateration for 2D (three circles)
+    public static void trilaterate(double x1, double y1, double r1,
+                                   double x2, double y2, double r2,
+                                   double x3, double y3, double r3, double[] out) {
+        double A = 2 * (x2 - x1);
+        double B = 2 * (y2 - y1);
+        double C = r1 * r1 - r2 * r2 - x1 * x1 + x2 * x2 - y1 * y1 + y2 * y2;
+        double D = 2 * (x3 - x2);
+        double E = 2 * (y3 - y2);
+        double F = r2 * r2 - r3 * r3 - x2 * x2 + x3 * x3 - y2 * y2 + y3 * y3;
+
+        double denominator = (A * E - B * D);
+        if (Math.abs(denominator) < 1e-6) {
+            out[0] = out[1] = Double.NaN; // Degenerate case
+            return;
+        }
+        out[0] = (C * E - F * B) / denominator;
+        out[1] = (A * F - D * C) / denominator;
+    }
+}
@@ -0,0 +1,253 @@
+import bench.Targets;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.paho.client.mqttv3.*;
+
+// Default-package side of bench.Targets: wires the benchmarks to the application classes
+public class BenchTargets implements Targets {
+    private static final String JSON =
+        "{\"deviceId\":\"Publisher-Publisher1\",\"coordinates\":{\"x\":-37.25,\"y\":112.50},\"rssi\":-61.75}";
+    private static final byte[] DEVICE_ID = "Publisher-Publisher1".getBytes(StandardCharsets.UTF_8);
+
+    @Override
+    public Decode decode() {
+        byte[] json = JSON.getBytes(StandardCharsets.UTF_8);
+        ReadingEncoder encoder = new ReadingEncoder();
+        encoder.encodeBinary(DEVICE_ID, -37.25, 112.5, -61.75, System.currentTimeMillis());
+        byte[] binary = encoder.toByteArray();
+        ReadingDecoder decoder = new ReadingDecoder();
+        Reading reading = new Reading();
+        return new Decode() {
+            public String jsonDeviceId() { return SimpleJsonParser.getString(JSON, "deviceId"); }
+            public double jsonRssi() { return SimpleJsonParser.getDouble(JSON, "rssi"); }
+            public double jsonX() { return SimpleJsonParser.getCoord(JSON, "x"); }
+            public int decodeJson() { return decoder.decode(json, reading); }
+            public int decodeBinary() { return decoder.decode(binary, reading); }
+            public double lastRssi() { return reading.rssi; }
+        };
+    }
+
+    @Override
+    public Solve solve(int anchors, long seed) {
+        Random random = new Random(seed);
+        double rx = 12.5, ry = -30.0;
+        AnchorSet set = new AnchorSet(new SpatialGrid(-150, -150, 150, 150, 25));
+        double[] xs = new double[anchors], ys = new double[anchors], ds = new double[anchors];
+        for (int i = 0; i < anchors; i++) {
+            xs[i] = random.nextDouble() * 300 - 150;
+            ys[i] = random.nextDouble() * 300 - 150;
+            // 5% multiplicative noise, roughly what RSSI ranging gives at best
+            ds[i] = Math.hypot(xs[i] - rx, ys[i] - ry) * (1 + random.nextGaussian() * 0.05);
+            set.update(i, xs[i], ys[i], ds[i]);
+        }
+        LeastSquaresSolver solver = new LeastSquaresSolver(3);
+        NearbyAnchorSolver nearby = new NearbyAnchorSolver(new LeastSquaresSolver(3), 8, 60);
+        return new Solve() {
+            int next;
+            boolean flip;
+
+            public void trilaterate(double[] out) {
+                TrilaterationSolver.trilaterate(xs[0], ys[0], ds[0], xs[1], ys[1], ds[1], xs[2], ys[2], ds[2], out);
+            }
+
+            public boolean leastSquares(double[] out) {
+                return solver.solve(set, out);
+            }
+
+            public boolean nearby(double[] out) {
+                return nearby.solve(set, out);
+            }
+
+            public void moveNextAnchor() {
+                int i = next;
+                next = i + 1 == anchors ? 0 : i + 1;
+                if (i == 0) flip = !flip;
+                set.update(i, xs[i] + (flip ? 0.5 : 0), ys[i], ds[i]);
+            }
+        };
+    }
+
+    @Override
+    public Log log(int capacity) {
+        LogModel model = new LogModel(capacity, capacity * 128);
+        Reading[] readings = new Reading[64];
+        ReadingDecoder decoder = new ReadingDecoder();
+        ReadingEncoder encoder = new ReadingEncoder();
+        for (int i = 0; i < readings.length; i++) {
+            readings[i] = new Reading();
+            encoder.encodeJson("Publisher-P" + i, i, -i, -40 - i);
+            decoder.decode(encoder.buffer(), 0, encoder.length(), readings[i]);
+            readings[i].setPayload(encoder.buffer(), 0, encoder.length());
+        }
+        return new Log() {
+            int next;
+
+            public void appendBatch(int batch) {
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < batch; i++) {
+                    model.appendReading(readings[next], now);
+                    next = (next + 1) & (readings.length - 1);
+                }
+                model.endBatch();
+            }
+
+            public int size() {
+                return model.getSize();
+            }
+        };
+    }
+
+    @Override
+    public RoundTrip roundTrip(int qos, String format) throws Exception {
+        LocalBroker broker = new LocalBroker(0);
+        String topic = "sensor/data";
+        AtomicLong received = new AtomicLong();
+        ReadingDecoder decoder = new ReadingDecoder();
+        Reading reading = new Reading();
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        options.setMaxInflight(65535);
+
+        MqttClient subscriber = new MqttClient(broker.url(), "bench-sub", null);
+        subscriber.setCallback(new MqttCallback() {
+            public void connectionLost(Throwable cause) {}
+            public void messageArrived(String t, MqttMessage message) {
+                decoder.decode(message.getPayload(), reading);
+                received.incrementAndGet();
+            }
+            public void deliveryComplete(IMqttDeliveryToken token) {}
+        });
+        subscriber.connect(options);
+        subscriber.subscribe(topic, qos);
+
+        MqttAsyncClient publisher = new MqttAsyncClient(broker.url(), "bench-pub", null);
+        publisher.connect(options).waitForCompletion();
+        ReadingEncoder.Format payloadFormat = ReadingEncoder.Format.parse(format, ReadingEncoder.Format.JSON);
+        ReadingEncoder encoder = new ReadingEncoder();
+
+        return new RoundTrip() {
+            long sent;
+
+            public void publishAndAwait() throws Exception {
+                publishBurst(1);
+            }
+
+            public void publishBurst(int count) throws Exception {
+                for (int i = 0; i < count; i++) {
+                    encoder.encode(payloadFormat, DEVICE_ID, sent % 300 - 150, 0, -60, System.currentTimeMillis(), sent + 1);
+                    MqttMessage message = new MqttMessage(encoder.toByteArray());
+                    message.setQos(qos);
+                    while (true) {
+                        try {
+                            publisher.publish(topic, message);
+                            break;
+                        } catch (MqttException ex) {
+                            if (ex.getReasonCode() != MqttException.REASON_CODE_MAX_INFLIGHT) throw ex;
+                            Thread.onSpinWait();
+                        }
+                    }
+                    sent++;
+                }
+                long deadline = System.nanoTime() + 10_000_000_000L;
+                while (received.get() < sent) {
+                    if (System.nanoTime() > deadline) throw new IllegalStateException("messages lost: sent " + sent + ", received " + received.get());
+                    Thread.onSpinWait();
+                }
+            }
+
+            public void close() throws Exception {
+                publisher.disconnect().waitForCompletion();
+                publisher.close();
+                subscriber.disconnect();
+                subscriber.close();
+                broker.close();
+            }
+        };
+    }
+
+    @Override
+    public Scaling scaling(int gateways, String mode) throws Exception {
+        LocalBroker broker = new LocalBroker(0);
+        TopicScheme scheme = new TopicScheme("sensor/data/{zone}/{partition}/{deviceId}", 16);
+        GatewayEngine[] engines = new GatewayEngine[gateways];
+        // Readings through each engine's aggregator, not just decoded off the socket
+        AtomicLong processed = new AtomicLong();
+        for (int g = 0; g < gateways; g++) {
+            List<String> filters;
+            switch (mode) {
+                case "shared": filters = scheme.filters((List<String>) null, null, "bench"); break;
+                case "partitioned": filters = scheme.filters(null, g + "/" + gateways, null); break;
+                default: filters = scheme.filters((List<String>) null, null, null);
+            }
+            engines[g] = GatewayEngine.fromSettings(1);
+            engines[g].setEventListener(s -> {});
+            engines[g].addSink(new GatewaySink() {
+                public void onReading(Reading reading) { processed.incrementAndGet(); }
+                public void onSnapshot(PositionSnapshot snapshot) {}
+            });
+            engines[g].start();
+            engines[g].connect(broker.url(), "bench-gateway-" + g, filters);
+        }
+        int devices = 256;
+        byte[][] ids = new byte[devices][];
+        String[] topics = new String[devices];
+        int[] partitionOf = new int[devices];
+        for (int i = 0; i < devices; i++) {
+            String id = "Bench-" + i;
+            ids[i] = id.getBytes(StandardCharsets.UTF_8);
+            topics[i] = scheme.topicFor("z" + (i % 4), id);
+            partitionOf[i] = scheme.partitionOf(id);
+        }
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        options.setMaxInflight(65535);
+        // One publisher per partition: the broker routes each connection on its own thread, so a
+        // single publisher would serialise delivery and cap every mode at the same rate
+        MqttAsyncClient[] publishers = new MqttAsyncClient[scheme.partitions()];
+        for (int p = 0; p < publishers.length; p++) {
+            publishers[p] = new MqttAsyncClient(broker.url(), "bench-pub-" + p, null);
+            publishers[p].connect(options).waitForCompletion();
+        }
+        ReadingEncoder encoder = new ReadingEncoder();
+        int copies = mode.equals("fanout") ? gateways : 1;
+
+        return new Scaling() {
+            long sent;
+
+            public void publishBurst(int count) throws Exception {
+                for (int i = 0; i < count; i++) {
+                    int d = (int) (sent % devices);
+                    encoder.encodeBinary(ids[d], d % 300 - 150, 0, -60, System.currentTimeMillis(), sent + 1);
+                    MqttMessage message = new MqttMessage(encoder.toByteArray());
+                    message.setQos(0);
+                    while (true) {
+                        try {
+                            publishers[partitionOf[d]].publish(topics[d], message);
+                            break;
+                        } catch (MqttException ex) {
+                            if (ex.getReasonCode() != MqttException.REASON_CODE_MAX_INFLIGHT) throw ex;
+                            Thread.onSpinWait();
+                        }
+                    }
+                    sent++;
+                }
+                long deadline = System.nanoTime() + 10_000_000_000L;
+                while (processed.get() < sent * copies) {
+                    if (System.nanoTime() > deadline) throw new IllegalStateException("readings lost: expected " + sent * copies + ", processed " + processed.get());
+                    Thread.onSpinWait();
+                }
+            }
+
+            public void close() throws Exception {
+                for (MqttAsyncClient publisher : publishers) {
+                    publisher.disconnect().waitForCompletion();
+                    publisher.close();
+                }
+                for (GatewayEngine e : engines) e.stop();
+                broker.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Field extraction through SimpleJsonParser and whole-reading decodes through ReadingDecoder
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+    private Targets.Decode decode;
+
+    @Setup
+    public void setup() {
+        decode = Targets.get().decode();
+    }
+
+    @Benchmark
+    public String parserDeviceId() {
+        return decode.jsonDeviceId();
+    }
+
+    @Benchmark
+    public double parserRssi() {
+        return decode.jsonRssi();
+    }
+
+    @Benchmark
+    public double parserCoordinate() {
+        return decode.jsonX();
+    }
+
+    @Benchmark
+    public double decodeJson() {
+        decode.decodeJson();
+        return decode.lastRssi();
+    }
+
+    @Benchmark
+    public double decodeBinary() {
+        decode.decodeBinary();
+        return decode.lastRssi();
+    }
+}
@@ -0,0 +1,48 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Publisher -> LocalBroker -> subscriber over loopback with the real Paho clients. roundTrip
+// samples single-message latency (percentiles in the report); burst measures throughput with
+// many messages in flight (ops are bursts of BURST messages).
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+    public static final int BURST = 1000;
+
+    @Param({"0", "1"})
+    public int qos;
+
+    @Param({"json", "binary"})
+    public String format;
+
+    private Targets.RoundTrip roundTrip;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        roundTrip = Targets.get().roundTrip(qos, format);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        roundTrip.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void roundTrip() throws Exception {
+        roundTrip.publishAndAwait();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BURST)
+    public void burst() throws Exception {
+        roundTrip.publishBurst(BURST);
+    }
+}
@@ -0,0 +1,42 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Aggregate gateway throughput as gateways are added behind one broker. In fanout mode every
+// gateway processes every reading, so the processed rate divided by gateways is the useful rate;
+// shared and partitioned split the topics between gateways, which is what lets them scale
+// (ops are bursts of BURST readings published; compare across the gateways param).
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GatewayScalingBenchmark {
+    public static final int BURST = 1000;
+
+    @Param({"1", "2", "4"})
+    public int gateways;
+
+    @Param({"fanout", "shared", "partitioned"})
+    public String mode;
+
+    private Targets.Scaling scaling;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        scaling = Targets.get().scaling(gateways, mode);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        scaling.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BURST)
+    public void burst() throws Exception {
+        scaling.publishBurst(BURST);
+    }
+}
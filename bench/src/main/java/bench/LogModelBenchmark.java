@@ -0,0 +1,31 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Subscriber log append path on a full ring, so every append also evicts the oldest row.
+// Throughput is in batches/s; multiply by batch for rows/s.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogModelBenchmark {
+    @Param({"1", "256"})
+    public int batch;
+
+    private Targets.Log log;
+
+    @Setup
+    public void setup() {
+        log = Targets.get().log(10_000);
+        while (log.size() < 10_000) log.appendBatch(1000);
+    }
+
+    @Benchmark
+    public int append() {
+        log.appendBatch(batch);
+        return log.size();
+    }
+}
@@ -0,0 +1,49 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Closed-form trilateration against the weighted least-squares solver over every anchor and
+// over the nearest ones only, and the O(1) cost of moving one anchor in the incremental normal
+// equations (plus the spatial grid)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolverBenchmark {
+    @Param({"3", "8", "64", "2048"})
+    public int anchors;
+
+    private Targets.Solve solve;
+    private final double[] out = new double[2];
+
+    @Setup
+    public void setup() {
+        solve = Targets.get().solve(anchors, 42);
+    }
+
+    @Benchmark
+    public double trilaterate() {
+        solve.trilaterate(out);
+        return out[0] + out[1];
+    }
+
+    @Benchmark
+    public double leastSquares() {
+        solve.leastSquares(out);
+        return out[0] + out[1];
+    }
+
+    @Benchmark
+    public double nearbyLeastSquares() {
+        solve.nearby(out);
+        return out[0] + out[1];
+    }
+
+    @Benchmark
+    public void anchorUpdate() {
+        solve.moveNextAnchor();
+    }
+}
@@ -0,0 +1,74 @@
+package bench;
+
+// JMH only generates harness code for benchmarks in a named package, while the application lives
+// in the default package, which named packages cannot import. The benchmarks therefore talk to the
+// application through this interface; the default-package BenchTargets implements it and is looked
+// up once by name.
+public interface Targets {
+    static Targets get() {
+        try {
+            return (Targets) Class.forName("BenchTargets").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("BenchTargets not on the classpath", ex);
+        }
+    }
+
+    // Payload decoding: SimpleJsonParser field extraction and ReadingDecoder over JSON/binary bytes
+    interface Decode {
+        String jsonDeviceId();
+        double jsonRssi();
+        double jsonX();
+        // Returns the decoder status; the decoded RSSI is read back through lastRssi()
+        int decodeJson();
+        int decodeBinary();
+        double lastRssi();
+    }
+
+    // Position solving over a fixed set of anchors around a known receiver
+    interface Solve {
+        void trilaterate(double[] out);
+        boolean leastSquares(double[] out);
+        // Least squares over the strongest anchors near the previous estimate (NearbyAnchorSolver)
+        boolean nearby(double[] out);
+        // Moves the next anchor (round robin) by a small offset through AnchorSet.update
+        void moveNextAnchor();
+    }
+
+    // Subscriber log model append path: a batch of readings then one endBatch()
+    interface Log {
+        void appendBatch(int batch);
+        int size();
+    }
+
+    // Publisher -> in-process broker -> subscriber, through real Paho clients over loopback TCP
+    interface RoundTrip extends AutoCloseable {
+        // Publishes one reading and waits until the subscriber has received it
+        void publishAndAwait() throws Exception;
+        // Publishes count readings back to back and waits for all of them to arrive
+        void publishBurst(int count) throws Exception;
+        @Override
+        void close() throws Exception;
+    }
+
+    // Publisher -> in-process broker -> several one-shard GatewayEngines over Paho, devices on
+    // per-device topics of sensor/data/{zone}/{partition}/{deviceId}
+    interface Scaling extends AutoCloseable {
+        // Publishes count readings round robin over the devices and waits until the gateways
+        // have processed all of them (every gateway gets each reading in fanout mode)
+        void publishBurst(int count) throws Exception;
+        @Override
+        void close() throws Exception;
+    }
+
+    Decode decode();
+
+    Solve solve(int anchors, long seed);
+
+    Log log(int capacity);
+
+    RoundTrip roundTrip(int qos, String format) throws Exception;
+
+    // mode: fanout (every gateway subscribes to everything), shared (one $share group) or
+    // partitioned (each gateway owns every gateways-th topic partition)
+    Scaling scaling(int gateways, String mode) throws Exception;
+}